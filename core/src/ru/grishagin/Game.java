@@ -5,14 +5,35 @@ import com.badlogic.gdx.graphics.GL20;
 import ru.grishagin.components.PositionComponent;
 import ru.grishagin.model.GameModel;
 import ru.grishagin.screens.MainScreen;
+import ru.grishagin.systems.patfinding.PathRequestProcessor;
+import ru.grishagin.systems.scheduler.SystemExecutor;
 import ru.grishagin.view.View;
 
 public class Game extends com.badlogic.gdx.Game {
 
 	private View view;
+	private final PathRequestProcessor pathRequestProcessor;
+	private final SystemExecutor systemExecutor;
+
+	public Game() {
+		this(null, null);
+	}
+
+	//platforms with threads may search paths off the render thread, default time-sliced queue is used otherwise.
+	//The same for systems: they may run at the same time, one by one otherwise
+	public Game(PathRequestProcessor pathRequestProcessor, SystemExecutor systemExecutor) {
+		this.pathRequestProcessor = pathRequestProcessor;
+		this.systemExecutor = systemExecutor;
+	}
 	
 	@Override
 	public void create () {
+		if(pathRequestProcessor != null){
+			GameModel.instance.movementSystem.setPathRequestProcessor(pathRequestProcessor);
+		}
+		if(systemExecutor != null){
+			GameModel.instance.scheduler.setExecutor(systemExecutor);
+		}
 		GameModel.instance.loadObjects();
 		screen = new MainScreen();
 		setScreen(screen);
@@ -31,6 +52,8 @@ public class Game extends com.badlogic.gdx.Game {
 	@Override
 	public void dispose() {
 		super.dispose();
+		GameModel.instance.movementSystem.getPathRequestProcessor().dispose();
+		GameModel.instance.scheduler.getExecutor().dispose();
 		//AssetManager.getInstance().dispose();
 	}
 }
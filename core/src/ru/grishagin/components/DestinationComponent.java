@@ -3,8 +3,10 @@ package ru.grishagin.components;
 
 import com.badlogic.ashley.core.Component;
 import com.badlogic.ashley.core.Entity;
-import ru.grishagin.systems.patfinding.FlatTiledNode;
-import ru.grishagin.systems.patfinding.TiledNode;
+import ru.grishagin.systems.patfinding.DStarLite;
+import ru.grishagin.systems.patfinding.GridTiledNode;
+import ru.grishagin.systems.patfinding.PathRequest;
+import ru.grishagin.systems.patfinding.ReservationTable;
 import ru.grishagin.systems.patfinding.TiledSmoothableGraphPath;
 
 //End point of entity's journey
@@ -13,15 +15,37 @@ public class DestinationComponent implements Component {
     public float x;
     public float y;
 
-    public TiledSmoothableGraphPath<FlatTiledNode> path;
+    public TiledSmoothableGraphPath<GridTiledNode> path;
+    public int nextWaypoint; //index in the path the entity is going to
+    public PathRequest pathRequest; //while path is being searched
+    public DStarLite replanner; //given when the path is broken by a door for the first time, shared, see MovementSystem
+    public Entity target; //if set, destination moves together with the target and no path is built
+    //cooperative plan while following the target: tile of each time slot from reservedFrom, see CooperativePlanner
+    public int agent = ReservationTable.NO_AGENT;
+    public int[] reservedTiles;
+    public int reservedFrom;
+    //destination is reached at any tile within the range, the destination tile itself is excluded then.
+    //Zero range means the destination tile itself
+    public float range;
 
     public DestinationComponent(float x, float y) {
+        this(x, y, 0);
+    }
+
+    public DestinationComponent(float x, float y, float range) {
         this.x = x;
         this.y = y;
+        this.range = range;
     }
 
     //set another entity as destination
     public DestinationComponent(Entity target){
+        this(target, 0);
+    }
+
+    public DestinationComponent(Entity target, float range){
+        this.target = target;
+        this.range = range;
         PositionComponent destinationPosition = target.getComponent(PositionComponent.class);
         x = destinationPosition.x;
         y = destinationPosition.y;
@@ -6,15 +6,32 @@ import com.badlogic.gdx.math.Vector2;
 public class PositionComponent implements Component {
     public float x;
     public float y;
+    //position before the last simulation step, rendering interpolates between it and the current one
+    public float previousX;
+    public float previousY;
 
     public PositionComponent(float x, float y) {
         this.x = x;
         this.y = y;
+        savePrevious();
     }
 
     public PositionComponent(Vector2 position){
-        this.x = position.x;
-        this.y = position.y;
+        this(position.x, position.y);
+    }
+
+    public void savePrevious(){
+        previousX = x;
+        previousY = y;
+    }
+
+    //alpha is the part of the next step already passed, see SimulationClock
+    public float getInterpolatedX(float alpha){
+        return previousX + (x - previousX) * alpha;
+    }
+
+    public float getInterpolatedY(float alpha){
+        return previousY + (y - previousY) * alpha;
     }
 
     public Vector2 getPosition(){
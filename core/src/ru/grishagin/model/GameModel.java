@@ -3,15 +3,18 @@ package ru.grishagin.model;
 import com.badlogic.ashley.core.Engine;
 import com.badlogic.ashley.core.Entity;
 import com.badlogic.ashley.core.Family;
+import com.badlogic.ashley.utils.ImmutableArray;
 import com.badlogic.gdx.ai.msg.MessageManager;
 import com.badlogic.gdx.maps.MapObject;
 import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import ru.grishagin.components.PositionComponent;
 import ru.grishagin.components.tags.PlayerControlled;
 import ru.grishagin.entities.EntityFactory;
 import ru.grishagin.model.map.MapFactory;
 import ru.grishagin.model.map.TiledBasedMap;
 import ru.grishagin.model.messages.MessageType;
 import ru.grishagin.systems.*;
+import ru.grishagin.systems.scheduler.SystemScheduler;
 
 import java.util.Calendar;
 import java.util.GregorianCalendar;
@@ -23,14 +26,19 @@ public class GameModel {
     public final Engine engine;
     public final InventorySystem inventorySystem = new InventorySystem(); //direct access to the system from different places
     public final MovementSystem movementSystem = new MovementSystem(); //same system for all maps. Call init() to change map
+    public final SimulationClock clock = new SimulationClock(); //systems are updated with its fixed step
+    public final SystemScheduler scheduler; //updates the systems instead of the engine
     private TiledBasedMap currentMap;
+    private ImmutableArray<Entity> positionedEntities;
 
     private GameModel(){
         date = new GregorianCalendar(2030, 5, 3, 19, 32, 18);
 
         engine = new Engine();
         currentMap = MapFactory.loadMap();
+        positionedEntities = engine.getEntitiesFor(Family.all(PositionComponent.class).get());
         initSystems();
+        scheduler = new SystemScheduler(engine);
         initBasicEntities();
     }
 
@@ -86,6 +94,17 @@ public class GameModel {
         }
     }
 
+    //runs as many fixed steps as the frame time makes, see SimulationClock
+    public void update(float delta){
+        int steps = clock.advance(delta);
+        for (int i = 0; i < steps; i++) {
+            for (int j = 0; j < positionedEntities.size(); j++) {
+                positionedEntities.get(j).getComponent(PositionComponent.class).savePrevious();
+            }
+            scheduler.update(clock.getStep());
+        }
+    }
+
     public TiledBasedMap getCurrentMap() {
         return currentMap;
     }
@@ -3,14 +3,16 @@ package ru.grishagin.model;
 import com.badlogic.ashley.core.ComponentMapper;
 import com.badlogic.ashley.core.Engine;
 import com.badlogic.ashley.core.Entity;
+import com.badlogic.ashley.core.EntityListener;
 import com.badlogic.ashley.core.Family;
-import com.badlogic.ashley.utils.ImmutableArray;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.utils.Array;
 import ru.grishagin.components.*;
 import ru.grishagin.components.tags.HostileTag;
 import ru.grishagin.components.tags.PlayerControlled;
+import ru.grishagin.systems.SpatialHash;
 import ru.grishagin.view.TiledRenderingEngine;
 
 public class InputHandler {
@@ -19,13 +21,65 @@ public class InputHandler {
     private ComponentMapper<InteractiveComponent> im = ComponentMapper.getFor(InteractiveComponent.class);
     private ComponentMapper<HostileTag> hm = ComponentMapper.getFor(HostileTag.class);
     private ComponentMapper<AttackTargetComponent> atm = ComponentMapper.getFor(AttackTargetComponent.class);
+    private ComponentMapper<PositionComponent> pm = ComponentMapper.getFor(PositionComponent.class);
 
     private Engine engine;
     private TiledRenderingEngine map;
 
+    //sprites are looked for by tiles around the pointed one, as far as the biggest sprite may reach from its tile
+    private float spriteLeft, spriteRight, spriteBottom, spriteTop; //pixels from the tile position
+    private final Array<Entity> candidates = new Array<Entity>();
+    private final Array<Entity> hovered = new Array<Entity>();
+
     public InputHandler(Engine engine, TiledRenderingEngine map) {
         this.engine = engine;
         this.map = map;
+
+        Family sprites = Family.all(SpriteComponent.class).get();
+        for (Entity entity : engine.getEntitiesFor(sprites)) {
+            addSpriteBounds(entity);
+        }
+        engine.addEntityListener(sprites, new EntityListener() {
+            @Override
+            public void entityAdded(Entity entity) {
+                addSpriteBounds(entity);
+            }
+
+            @Override
+            public void entityRemoved(Entity entity) {
+                //bounds are not shrunk, they only make the search a bit wider
+                hovered.removeValue(entity, true);
+            }
+        });
+    }
+
+    private void addSpriteBounds(Entity entity) {
+        SpriteComponent spriteComponent = sm.get(entity);
+        spriteLeft = Math.min(spriteLeft, spriteComponent.offset.x);
+        spriteRight = Math.max(spriteRight, spriteComponent.offset.x + spriteComponent.sprite.getRegionWidth());
+        spriteBottom = Math.min(spriteBottom, spriteComponent.offset.y);
+        spriteTop = Math.max(spriteTop, spriteComponent.offset.y + spriteComponent.sprite.getRegionHeight());
+    }
+
+    /*
+     * Entities whose sprites may cover the world point are added to out, with some more around.
+     * Sprite is drawn from its entity position, which is x + y tiles to the right and (y - x) / 2 up.
+     * So the position is the pointed one minus the sprite offset of the point, and the offset is within the bounds of all sprites.
+     */
+    private Array<Entity> getSpriteCandidates(float x, float y, Array<Entity> out) {
+        float tileHeight = map.getTileHeight();
+        float pointX = (x - 2 * y) / (2 * tileHeight);
+        float pointY = (x + 2 * y) / (2 * tileHeight);
+        //one tile more on each side, sprites are drawn at interpolated positions
+        int fromX = (int)Math.floor(pointX - (spriteRight - 2 * spriteBottom) / (2 * tileHeight)) - 1;
+        int toX = (int)Math.floor(pointX - (spriteLeft - 2 * spriteTop) / (2 * tileHeight)) + 1;
+        int fromY = (int)Math.floor(pointY - (spriteRight + 2 * spriteTop) / (2 * tileHeight)) - 1;
+        int toY = (int)Math.floor(pointY - (spriteLeft + 2 * spriteBottom) / (2 * tileHeight)) + 1;
+        return getSpatialHash().getEntities(fromX, fromY, toX, toY, out);
+    }
+
+    private SpatialHash getSpatialHash() {
+        return GameModel.instance.movementSystem.getSpatialHash();
     }
 
     //X and Y are world-coords
@@ -39,9 +93,9 @@ public class InputHandler {
         currentVelocity.y = 0;
 
         boolean isSomeActionHappens = false;//flag to indicate there is no interactable object on this coords
-        for (Entity entity : engine.getEntitiesFor(Family.all(SpriteComponent.class).get())) {
+        for (Entity entity : getSpriteCandidates(x, y, candidates)) {
             SpriteComponent spriteComponent = sm.get(entity);
-            if(withinSprite(spriteComponent.sprite, (int)x, (int)y)){
+            if(spriteComponent != null && withinSprite(spriteComponent.sprite, (int)x, (int)y)){
                 if(im.get(entity) != null){
                     player.add(new InteractionComponent(entity));
                     isSomeActionHappens = true;
@@ -53,6 +107,7 @@ public class InputHandler {
                 //do nothing
             }
         }
+        candidates.clear();
 
         //is no interaction happens, move player
         //convert from ortho world-coords to iso-game coords
@@ -80,29 +135,38 @@ public class InputHandler {
 
     //X and Y are world-coords
     public void onHover(float x, float y){
-        for (Entity entity : engine.getEntitiesFor(Family.all(SpriteComponent.class).get())) {
-            if(shm.get(entity) != null) { //not all entities with sprites have attached shader
+        //turn off outline on previously hovered sprites, only they may have it.
+        //Shader may have been removed since then, e.g. from a killed entity
+        for (Entity entity : hovered) {
+            if(shm.get(entity) != null){
+                shm.get(entity).isActive = false;
+            }
+        }
+        hovered.clear();
+
+        for (Entity entity : getSpriteCandidates(x, y, candidates)) {
+            if(shm.get(entity) != null && sm.get(entity) != null) { //not all entities with sprites have attached shader
                 SpriteComponent spriteComponent = sm.get(entity);
                 if (withinSprite(spriteComponent.sprite, (int) x, (int) y)) {
                     shm.get(entity).isActive = true;
-                } else {
-                    //turn off outline on other sprites
-                    shm.get(entity).isActive = false;
+                    hovered.add(entity);
                 }
             }
         }
+        candidates.clear();
     }
     
     private Entity getEntity(float x, float y){
-        ImmutableArray<Entity> entities = engine.getEntitiesFor(Family.all(PositionComponent.class, InteractiveComponent.class).get());
-        ComponentMapper<PositionComponent> pm = ComponentMapper.getFor(PositionComponent.class);
-        for (Entity entity : entities) {
+        getSpatialHash().getEntities((int)x, (int)y, candidates);
+        for (Entity entity : candidates) {
             PositionComponent position = pm.get(entity);
-            if((int)position.x == (int)x && (int)position.y == (int)y){
+            if(im.get(entity) != null && (int)position.x == (int)x && (int)position.y == (int)y){
+                candidates.clear();
                 return entity;
             }
         }
 
+        candidates.clear();
         return null;
     }
 
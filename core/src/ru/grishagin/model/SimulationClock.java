@@ -0,0 +1,102 @@
+package ru.grishagin.model;
+
+/*
+ * Fixed time step for the simulation, independent of the frame rate.
+ * Frame time is accumulated and spent in whole steps, the rest is carried to the next frame.
+ * Systems always get the same delta, so a run depends only on the number of steps and not on how they fell into frames.
+ *
+ * After a long hitch at most maxSteps are run in one frame and the rest of the time is dropped:
+ * the game slows down for a moment instead of jumping ahead.
+ * Rendering between two steps may interpolate positions by getAlpha().
+ *
+ * Knows nothing about the engine or the graphics, so benchmarks and replays may drive it headless.
+ */
+public class SimulationClock {
+
+    public static final float DEFAULT_RATE = 60; //steps per second
+    public static final int DEFAULT_MAX_STEPS = 5; //per frame
+    //part of a step. With vsync frame time is the step give or take a rounding error, without it frames would get 0 and 2 steps
+    private static final float TOLERANCE = 0.01f;
+
+    private float step;
+    private int maxSteps;
+    private float accumulator;
+    private long steps;
+    private double time;
+    private double droppedTime;
+
+    public SimulationClock() {
+        this(DEFAULT_RATE, DEFAULT_MAX_STEPS);
+    }
+
+    public SimulationClock(float rate, int maxSteps) {
+        setRate(rate);
+        setMaxSteps(maxSteps);
+    }
+
+    //accumulated time is kept, it's spent by the new steps
+    public void setRate(float rate) {
+        if(rate <= 0){
+            throw new IllegalArgumentException("Simulation rate must be positive: " + rate);
+        }
+        step = 1 / rate;
+    }
+
+    public float getRate() {
+        return 1 / step;
+    }
+
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = Math.max(maxSteps, 1);
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    //delta of every step, seconds
+    public float getStep() {
+        return step;
+    }
+
+    //adds the frame time and returns how many steps must be run now, each of getStep() seconds
+    public int advance(float delta) {
+        accumulator += Math.max(delta, 0);
+        int due = (int)(accumulator / step + TOLERANCE); //a step taken a bit early is paid back by the next frame
+        if(due > maxSteps){
+            droppedTime += (due - maxSteps) * (double)step;
+            accumulator -= (due - maxSteps) * step;
+            due = maxSteps;
+        }
+        accumulator -= due * step;
+        steps += due;
+        time += due * (double)step;
+        return due;
+    }
+
+    //part of the next step already passed: 0 right after a step, close to 1 just before the next one
+    public float getAlpha() {
+        return Math.min(Math.max(accumulator / step, 0), 1);
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    //simulated time, seconds
+    public double getTime() {
+        return time;
+    }
+
+    //real time which has not been simulated because of the steps limit, seconds
+    public double getDroppedTime() {
+        return droppedTime;
+    }
+
+    public void reset() {
+        accumulator = 0;
+        steps = 0;
+        time = 0;
+        droppedTime = 0;
+    }
+}
@@ -6,7 +6,8 @@ import com.badlogic.gdx.maps.tiled.TmxMapLoader;
 public class MapFactory {
 
     public static TiledBasedMap loadMap(){
-        return new TiledBasedMap(new TmxMapLoader().load("maps/demo.tmx"));
+        String fileName = "maps/demo.tmx";
+        return new TiledBasedMap(new TmxMapLoader().load(fileName), fileName);
     }
 
     /*public static Map loadMap(){
@@ -0,0 +1,133 @@
+package ru.grishagin.model.map;
+
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.utils.IntArray;
+import ru.grishagin.utils.Logger;
+
+import static ru.grishagin.model.map.TiledBasedMap.ROOF_LAYER;
+
+/*
+ * Buildings of the map found once by their roofs: cells of the roof layer connected by sides make one building.
+ * Each tile keeps the number of the building it's under, 0 outside, so asking where somebody is costs an array read.
+ * Roof of one building is hidden by taking its cells out of the layer and shown by putting them back,
+ * roofs of other buildings stay in place.
+ *
+ * Cells are taken out of the map itself, so call showAll() before anything else reads the roof layer.
+ */
+public class RoofRegions {
+
+    public static final int OUTSIDE = 0;
+
+    private final int width;
+    private final int height;
+    private final TiledMapTileLayer layer; //null if the map has no roof tiles
+    private final int[] regions; //by tile
+    //tiles of each building one after another, building n has tiles from regionStarts[n - 1] to regionStarts[n]
+    private final int[] regionTiles;
+    private final int[] regionStarts;
+    private final TiledMapTileLayer.Cell[] cells; //roof cells by tile, to put hidden ones back
+    private final boolean[] hidden;
+
+    public RoofRegions(TiledBasedMap map) {
+        width = map.getxSize();
+        height = map.getySize();
+        regions = new int[width * height];
+        layer = getRoofLayer(map);
+        cells = new TiledMapTileLayer.Cell[width * height];
+        if(layer != null){
+            for (int x = 0; x < Math.min(width, layer.getWidth()); x++) {
+                for (int y = 0; y < Math.min(height, layer.getHeight()); y++) {
+                    cells[x * height + y] = layer.getCell(x, y);
+                }
+            }
+        }
+
+        //flood fill over the roof cells
+        IntArray tiles = new IntArray();
+        IntArray starts = new IntArray();
+        IntArray stack = new IntArray();
+        starts.add(0);
+        for (int tile = 0; tile < cells.length; tile++) {
+            if(cells[tile] == null || regions[tile] != OUTSIDE){
+                continue;
+            }
+            int region = starts.size;
+            regions[tile] = region;
+            stack.add(tile);
+            while (stack.size > 0){
+                int current = stack.pop();
+                tiles.add(current);
+                int x = current / height;
+                int y = current % height;
+                visit(x - 1, y, region, stack);
+                visit(x + 1, y, region, stack);
+                visit(x, y - 1, region, stack);
+                visit(x, y + 1, region, stack);
+            }
+            starts.add(tiles.size);
+        }
+        regionTiles = tiles.toArray();
+        regionStarts = starts.toArray();
+        hidden = new boolean[regionStarts.length];
+
+        if(layer != null){
+            layer.setVisible(true); //roofs are shown and hidden by buildings from now on
+        }
+    }
+
+    private static TiledMapTileLayer getRoofLayer(TiledBasedMap map) {
+        MapLayer layer = map.getMap().getLayers().get(ROOF_LAYER);
+        if(layer instanceof TiledMapTileLayer){
+            return (TiledMapTileLayer)layer;
+        }
+        if(layer != null){
+            Logger.warning("Layer " + ROOF_LAYER + " is not a tile layer, buildings are not found");
+        }
+        return null;
+    }
+
+    private void visit(int x, int y, int region, IntArray stack) {
+        if(x < 0 || y < 0 || x >= width || y >= height){
+            return;
+        }
+        int tile = x * height + y;
+        if(cells[tile] != null && regions[tile] == OUTSIDE){
+            regions[tile] = region;
+            stack.add(tile);
+        }
+    }
+
+    public int getRegionCount() {
+        return regionStarts.length - 1;
+    }
+
+    //building the tile is under, OUTSIDE if none or the tile is not on the map
+    public int getRegion(int x, int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height){
+            return OUTSIDE;
+        }
+        return regions[x * height + y];
+    }
+
+    public boolean isHidden(int region) {
+        return region != OUTSIDE && hidden[region];
+    }
+
+    public void setHidden(int region, boolean isHidden) {
+        if(region == OUTSIDE || hidden[region] == isHidden){
+            return;
+        }
+        hidden[region] = isHidden;
+        for (int i = regionStarts[region - 1]; i < regionStarts[region]; i++) {
+            int tile = regionTiles[i];
+            layer.setCell(tile / height, tile % height, isHidden ? null : cells[tile]);
+        }
+    }
+
+    public void showAll() {
+        for (int region = 1; region < hidden.length; region++) {
+            setHidden(region, false);
+        }
+    }
+}
@@ -23,17 +23,28 @@ public class TiledBasedMap {
     private static final String HEIGHT = "height";
     public static final String TILE_WIDTH = "tilewidth";
     public static final String TILE_HEIGHT = "tileheight";
+    private static final String LANDMARKS = "landmarks";
 
     private TiledMap map;
+    private String fileName; //null if the map is not loaded from a file
 
     public TiledBasedMap(TiledMap map) {
+        this(map, null);
+    }
+
+    public TiledBasedMap(TiledMap map, String fileName) {
         this.map = map;
+        this.fileName = fileName;
     }
 
     public TiledMap getMap() {
         return map;
     }
 
+    public String getFileName() {
+        return fileName;
+    }
+
     public int getxSize() {
         return (Integer) map.getProperties().get(WIDTH);
     }
@@ -42,6 +53,11 @@ public class TiledBasedMap {
         return (Integer) map.getProperties().get(HEIGHT);
     }
 
+    //map property, true if paths on the map are worth the ALT heuristic tables
+    public boolean isLandmarks() {
+        return map.getProperties().get(LANDMARKS, false, Boolean.class);
+    }
+
     public boolean isGlobal() {
         return false;
     }
@@ -6,11 +6,15 @@ import com.badlogic.gdx.maps.MapLayer;
 import com.badlogic.gdx.maps.MapObject;
 import com.badlogic.gdx.maps.MapProperties;
 import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTile;
 import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
 import com.badlogic.gdx.maps.tiled.TiledMapTileSet;
 import com.badlogic.gdx.maps.tiled.objects.TiledMapTileMapObject;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntSet;
 import ru.grishagin.components.TileGIdComponent;
+import ru.grishagin.systems.patfinding.WalkabilityGrid;
 import ru.grishagin.utils.Logger;
 
 import static ru.grishagin.entities.EntityFactory.X;
@@ -21,53 +25,129 @@ import static ru.grishagin.model.map.TiledBasedMap.TILE_WIDTH;
 public class TiledMapHelper {
 
     private static final String IMPASSABLE = "impassable";
+    private static final String DOOR = "door";
     private static final String FIRST_GID = "firstgid";
 
-    //only static objects are checked
+    //only static objects are checked. Walkability of the whole map is built at once by rasterizeWalkability()
     public static boolean isWalkable(TiledBasedMap map, int x, int y){
+        int tileHeight = getTileHeight(map.getMap());
         for (MapLayer layer : map.getMap().getLayers()) {
 
             //iterate over objects in the layer
             for (MapObject object: layer.getObjects()){
                 //check position
-                Vector2 position = convertObjectMapCoordsToInternal(object, map.getMap());
-                if((int)position.x == x && (int)position.y == y){
+                if(getObjectX(object, tileHeight) == x && getObjectY(object, tileHeight) == y){
                     //check class  of the object
-                    if(object instanceof TiledMapTileMapObject){
-                        //check property IMPASSABLE
-                        if (((TiledMapTileMapObject) object).getTile().getProperties().containsKey(IMPASSABLE)
-                                && (boolean) ((TiledMapTileMapObject) object).getTile().getProperties().get(IMPASSABLE)) {
-                            return false;
-                        }
+                    if(object instanceof TiledMapTileMapObject && isImpassable(((TiledMapTileMapObject) object).getTile())){
+                        return false;
                     }
                 }
             }
 
             //iterate other tiles
             if(layer instanceof TiledMapTileLayer){
-                if(((TiledMapTileLayer)layer).getCell(x, y) != null) {
-                    MapProperties properties = ((TiledMapTileLayer) layer).getCell(x, y).getTile().getProperties();
-                    if(properties.getValues().hasNext()){
-                        System.out.println();
-                    }
-                    if (properties.containsKey(IMPASSABLE) && (boolean) properties.get(IMPASSABLE)) {
-                        return false;
-                    }
+                TiledMapTileLayer.Cell cell = ((TiledMapTileLayer)layer).getCell(x, y);
+                if(cell != null && isImpassable(cell.getTile())) {
+                    return false;
                 }
             }
         }
         return true;
     }
 
+    /*
+     * Walkability of every tile in one pass over the layers, the same as isWalkable() for each of them.
+     * Impassable tiles are found once in the tile sets, then cells and objects are checked by tile id.
+     * Size of the grid is the size of the first layer, things outside of it are skipped.
+     */
+    public static WalkabilityGrid rasterizeWalkability(TiledBasedMap map){
+        TiledMap tiledMap = map.getMap();
+        TiledMapTileLayer firstLayer = (TiledMapTileLayer)tiledMap.getLayers().get(0);
+        WalkabilityGrid walkability = new WalkabilityGrid(firstLayer.getWidth(), firstLayer.getHeight());
+        walkability.setAllWalkable();
+
+        IntSet impassableTiles = new IntSet();
+        for (TiledMapTileSet tileSet : tiledMap.getTileSets()) {
+            for (TiledMapTile tile : tileSet) {
+                if(isImpassable(tile)){
+                    impassableTiles.add(tile.getId());
+                }
+            }
+        }
+
+        int tileHeight = getTileHeight(tiledMap);
+        for (MapLayer layer : tiledMap.getLayers()) {
+            for (MapObject object : layer.getObjects()) {
+                if(object instanceof TiledMapTileMapObject
+                        && impassableTiles.contains(((TiledMapTileMapObject) object).getTile().getId())){
+                    setImpassable(walkability, getObjectX(object, tileHeight), getObjectY(object, tileHeight));
+                }
+            }
+
+            if(layer instanceof TiledMapTileLayer){
+                TiledMapTileLayer tileLayer = (TiledMapTileLayer)layer;
+                int width = Math.min(tileLayer.getWidth(), walkability.getWidth());
+                int height = Math.min(tileLayer.getHeight(), walkability.getHeight());
+                for (int x = 0; x < width; x++) {
+                    for (int y = 0; y < height; y++) {
+                        TiledMapTileLayer.Cell cell = tileLayer.getCell(x, y);
+                        if(cell != null && impassableTiles.contains(cell.getTile().getId())){
+                            walkability.setWalkable(walkability.getIndex(x, y), false);
+                        }
+                    }
+                }
+            }
+        }
+        return walkability;
+    }
+
+    private static void setImpassable(WalkabilityGrid walkability, int x, int y){
+        if(walkability.isInside(x, y)){
+            walkability.setWalkable(walkability.getIndex(x, y), false);
+        }
+    }
+
+    private static boolean isImpassable(TiledMapTile tile){
+        return tile.getProperties().get(IMPASSABLE, false, Boolean.class);
+    }
+
+    //tiles of doors may become walkable and back at any moment
+    public static Array<Vector2> getDoorPositions(TiledBasedMap map){
+        Array<Vector2> positions = new Array<Vector2>();
+        for (MapLayer layer : map.getMap().getLayers()) {
+            for (MapObject object: layer.getObjects()){
+                if(object instanceof TiledMapTileMapObject){
+                    MapProperties properties = ((TiledMapTileMapObject) object).getTile().getProperties();
+                    if (properties.containsKey(DOOR) && (boolean) properties.get(DOOR)) {
+                        positions.add(convertObjectMapCoordsToInternal(object, map.getMap()));
+                    }
+                }
+            }
+        }
+        return positions;
+    }
 
     //convert pixel coord from Tiled into cell-coordinates
     public static Vector2 convertObjectMapCoordsToInternal(MapObject object, TiledMap map){
-        int tileHeight = (int)map.getProperties().get(TILE_HEIGHT);
+        int tileHeight = getTileHeight(map);
         Vector2 internalPosition = new Vector2((float)object.getProperties().get(X)/tileHeight - 1, //items is misplaced a little
                 (float)object.getProperties().get(Y)/tileHeight);
         return internalPosition;
     }
 
+    //cell of the object, the same as the converted coords cast to int
+    private static int getObjectX(MapObject object, int tileHeight){
+        return (int)((float)object.getProperties().get(X)/tileHeight - 1);
+    }
+
+    private static int getObjectY(MapObject object, int tileHeight){
+        return (int)((float)object.getProperties().get(Y)/tileHeight);
+    }
+
+    private static int getTileHeight(TiledMap map){
+        return (int)map.getProperties().get(TILE_HEIGHT);
+    }
+
     //convert local id of the next state to global id and return texture region
     public static TextureRegion getStateTextureRegion(TiledMap map, int stateId, Entity entity){
         int gid = entity.getComponent(TileGIdComponent.class).gid;
@@ -44,7 +44,7 @@ public class MainStage extends Stage {
     @Override
     public void act(float delta) {
         //GameController.INSTANCE.update(delta);
-        GameModel.instance.engine.update(delta);
+        GameModel.instance.update(delta);
         UIManager.instance.update(delta);
         super.act(delta);
     }
@@ -3,53 +3,107 @@ package ru.grishagin.systems;
 import com.badlogic.ashley.core.ComponentMapper;
 import com.badlogic.ashley.core.Entity;
 import com.badlogic.ashley.core.Family;
-import com.badlogic.ashley.systems.IteratingSystem;
+import com.badlogic.gdx.utils.Array;
 import ru.grishagin.components.AttackTargetComponent;
+import ru.grishagin.components.DestinationComponent;
 import ru.grishagin.components.PositionComponent;
 import ru.grishagin.components.ai.AgentComponent;
 import ru.grishagin.components.tags.HostileTag;
 import ru.grishagin.model.GameModel;
 import ru.grishagin.model.ai.AgentState;
+import ru.grishagin.systems.scheduler.ParallelIteratingSystem;
+import ru.grishagin.systems.scheduler.SystemAccess;
 
-public class AISystem extends IteratingSystem {
+public class AISystem extends ParallelIteratingSystem<ParallelIteratingSystem.Scratch> {
     private static final int SIGHT_RADIUS = 3;
 
     private ComponentMapper<AgentComponent> am = ComponentMapper.getFor(AgentComponent.class);
     private ComponentMapper<PositionComponent> pm = ComponentMapper.getFor(PositionComponent.class);
     private ComponentMapper<AttackTargetComponent> atm = ComponentMapper.getFor(AttackTargetComponent.class);
+    private ComponentMapper<DestinationComponent> dm = ComponentMapper.getFor(DestinationComponent.class);
+    private final Array<Entity> nearby = new Array<Entity>();
+    private Entity player; //found once for all chunks, looking up a family is not thread safe
 
     public AISystem() {
         super(Family.all(AgentComponent.class, HostileTag.class, PositionComponent.class).get());
     }
 
+    //targets and destinations are added and removed through the commands, positions come from MovementSystem
     @Override
-    public void update(float deltaTime) {
-        super.update(deltaTime);
+    public void declareAccess(SystemAccess access) {
+        super.declareAccess(access);
+        access.reads(PositionComponent.class, HostileTag.class, AttackTargetComponent.class, DestinationComponent.class)
+                .writes(AgentComponent.class);
+    }
+
+    @Override
+    protected Scratch newScratch() {
+        return new Scratch();
     }
 
     @Override
-    protected void processEntity(Entity entity, float deltaTime) {
+    public void update(float deltaTime) {
         //combating only with player by now
-        Entity player = GameModel.instance.getPlayer();
+        player = GameModel.instance.getPlayer();
+        super.update(deltaTime);
+        wakeUpNearby(player);
+    }
+
+    //only idle agents around the enemy may notice it, the rest are not looked at
+    private void wakeUpNearby(Entity enemy) {
+        if(enemy == null){
+            return;
+        }
+        PositionComponent enemyPosition = pm.get(enemy);
+        GameModel.instance.movementSystem.getSpatialHash().getEntitiesInRadius(enemyPosition.x, enemyPosition.y, SIGHT_RADIUS, nearby);
+        for (Entity entity : nearby) {
+            if(getFamily().matches(entity) && am.get(entity).getCurrentState() == AgentState.IDLE
+                    && isEnemyNear(entity, enemy) && isReachable(entity, enemy)){
+                am.get(entity).setCurrentState(AgentState.ATTACK);
+            }
+        }
+        nearby.clear();
+    }
 
+    @Override
+    protected void processEntity(Entity entity, float deltaTime, Scratch scratch) {
         AgentComponent agent = am.get(entity);
         switch (agent.getCurrentState()) {
             case IDLE:
-                if(isEnemyNear(entity, player)){
-                    agent.setCurrentState(AgentState.ATTACK);
-                }
+                //woken up by wakeUpNearby()
                 break;
             case ATTACK:
+                if(!isReachable(entity, player)){
+                    //enemy has locked itself away, wait until it comes out
+                    agent.setCurrentState(AgentState.IDLE);
+                    scratch.commands.remove(entity, AttackTargetComponent.class);
+                    DestinationComponent destination = dm.get(entity);
+                    if(destination != null && destination.target == player){
+                        scratch.commands.remove(entity, DestinationComponent.class);
+                    }
+                    break;
+                }
                 AttackTargetComponent attackTargetComponent = atm.get(entity);
                 if(attackTargetComponent == null){
-                    entity.add(new AttackTargetComponent(player));
+                    scratch.commands.add(entity, new AttackTargetComponent(player));
                 }
 
         }
     }
 
+    //enemy is close and not behind a wall
     private boolean isEnemyNear(Entity entity, Entity enemy){
-        //TODO: check obstacles
-        return SystemHelper.getDistance(entity, enemy) < SIGHT_RADIUS;
+        if(SystemHelper.getDistance(entity, enemy) >= SIGHT_RADIUS){
+            return false;
+        }
+        PositionComponent position = pm.get(entity);
+        PositionComponent enemyPosition = pm.get(enemy);
+        return GameModel.instance.movementSystem.getLineOfSight().isClear((int)position.x, (int)position.y,
+                (int)enemyPosition.x, (int)enemyPosition.y);
+    }
+
+    private boolean isReachable(Entity entity, Entity enemy){
+        PositionComponent enemyPosition = pm.get(enemy);
+        return GameModel.instance.movementSystem.isReachable(entity, enemyPosition.x, enemyPosition.y, 0);
     }
 }
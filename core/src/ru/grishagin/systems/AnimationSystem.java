@@ -14,10 +14,12 @@ import ru.grishagin.components.TypeIdComponent;
 import ru.grishagin.model.GameModel;
 import ru.grishagin.model.map.TiledMapHelper;
 import ru.grishagin.model.messages.MessageType;
+import ru.grishagin.systems.scheduler.ScheduledSystem;
+import ru.grishagin.systems.scheduler.SystemAccess;
 import ru.grishagin.utils.AssetManager;
 import ru.grishagin.utils.Logger;
 
-public class AnimationSystem extends IteratingSystem implements Telegraph {
+public class AnimationSystem extends IteratingSystem implements Telegraph, ScheduledSystem {
     private ComponentMapper<SpriteComponent> sm = ComponentMapper.getFor(SpriteComponent.class);
     private ComponentMapper<TypeIdComponent> tm = ComponentMapper.getFor(TypeIdComponent.class);
 
@@ -25,6 +27,13 @@ public class AnimationSystem extends IteratingSystem implements Telegraph {
         super(Family.all(SpriteComponent.class).get()); //TODO: add animation component
     }
 
+    //sprites are changed by messages, in the thread of the sender
+    @Override
+    public void declareAccess(SystemAccess access) {
+        access.reads(NextStatesIds.class, TypeIdComponent.class, NameComponent.class)
+                .writes(SpriteComponent.class);
+    }
+
     @Override
     protected void processEntity(com.badlogic.ashley.core.Entity entity, float deltaTime) {
         //play animation here
@@ -5,6 +5,7 @@ import com.badlogic.ashley.core.Entity;
 import com.badlogic.ashley.core.Family;
 import com.badlogic.ashley.systems.IteratingSystem;
 import com.badlogic.gdx.ai.msg.MessageManager;
+import com.badlogic.gdx.utils.Array;
 import ru.grishagin.components.*;
 import ru.grishagin.components.items.ArmorComponent;
 import ru.grishagin.components.items.WeaponComponent;
@@ -13,9 +14,12 @@ import ru.grishagin.components.stats.HealthComponent;
 import ru.grishagin.components.tags.HostileTag;
 import ru.grishagin.model.actions.TransferAction;
 import ru.grishagin.model.messages.MessageType;
+import ru.grishagin.systems.scheduler.CommandBuffer;
+import ru.grishagin.systems.scheduler.ScheduledSystem;
+import ru.grishagin.systems.scheduler.SystemAccess;
 import ru.grishagin.utils.Logger;
 
-public class CombatSystem extends IteratingSystem {
+public class CombatSystem extends IteratingSystem implements ScheduledSystem {
 
     private ComponentMapper<AttackTargetComponent> atm = ComponentMapper.getFor(AttackTargetComponent.class);
     private static ComponentMapper<EquippedWeaponComponent> ewm = ComponentMapper.getFor(EquippedWeaponComponent.class);
@@ -27,10 +31,31 @@ public class CombatSystem extends IteratingSystem {
     private ComponentMapper<PositionComponent> pm = ComponentMapper.getFor(PositionComponent.class);
     private static ComponentMapper<CombatSkillsComponent> csm = ComponentMapper.getFor(CombatSkillsComponent.class);
 
+    private CommandBuffer commands = CommandBuffer.IMMEDIATE;
+    private final Array<Entity> killed = new Array<Entity>(); //during the current update
+
     public CombatSystem() {
         super(Family.all(PositionComponent.class, HealthComponent.class, EquippedWeaponComponent.class, EquippedArmorComponent.class).get());
     }
 
+    //the dead lose components, and messages about attacks and deaths are handled by other systems right away
+    @Override
+    public void declareAccess(SystemAccess access) {
+        access.exclusive();
+        commands = access.getCommands();
+    }
+
+    //the dead get their death messages after the changes are made, handlers look at what the dead have left
+    @Override
+    public void update(float deltaTime) {
+        super.update(deltaTime);
+        commands.play();
+        for (int i = 0; i < killed.size; i++) {
+            MessageManager.getInstance().dispatchMessage(MessageType.DEATH, killed.get(i));
+        }
+        killed.clear();
+    }
+
     @Override
     protected void processEntity(Entity entity, float deltaTime) {
         EquippedWeaponComponent equippedWeaponComponent = ewm.get(entity); //container for weapon entity
@@ -49,18 +74,19 @@ public class CombatSystem extends IteratingSystem {
             if(attackTarget != null){
                 float distance = SystemHelper.getDistance(entity, attackTarget);
                 if(wm.get(activeWeapon).range >= distance){ //if target in weapon range
-                    entity.remove(DestinationComponent.class);
+                    commands.remove(entity, DestinationComponent.class);
                     if(equippedWeaponComponent.lastAttack >= attackSpeed) { //if last attack was long ago, a new one can be performed
                         int damage = calculateAttackResult(entity, attackTarget);
                         if (damage > 0) {
                             HealthComponent targetHealth = hm.get(attackTarget);
+                            boolean wasAlive = targetHealth.health > 0; //the dead keep their health until the update ends
                             targetHealth.health = targetHealth.health - damage;
 
                             Logger.info(entity.getComponent(NameComponent.class).name + " hits " +
                                     attackTarget.getComponent(NameComponent.class) + " on " + damage +
                                     ". Remained health is " + targetHealth.health);
 
-                            if (targetHealth.health <= 0) {//target is dead
+                            if (wasAlive && targetHealth.health <= 0) {//target is dead
                                 markDead(attackTarget);
                             }
                         } else if (damage == 0) {
@@ -74,16 +100,14 @@ public class CombatSystem extends IteratingSystem {
                         equippedWeaponComponent.lastAttack = 0;//mark attack as performed
 
                         //stop attacking. Player have to click again, NPC should re-add target if it is still requred
-                        entity.remove(AttackTargetComponent.class);
+                        commands.remove(entity, AttackTargetComponent.class);
 
                         MessageManager.getInstance().dispatchMessage(MessageType.ATTACK, activeWeapon);
                     }
                 } else {//if not in range come closer
                     DestinationComponent currentDestination = dm.get(entity);
-                    if(currentDestination == null ||
-                            currentDestination.x != pm.get(attackTarget).x ||
-                            currentDestination.y != pm.get(attackTarget).y) {
-                        entity.add(new DestinationComponent(attackTarget));
+                    if(currentDestination == null || currentDestination.target != attackTarget) {
+                        commands.add(entity, new DestinationComponent(attackTarget, wm.get(activeWeapon).range));
                     }
                 }
             } else {
@@ -125,17 +149,17 @@ public class CombatSystem extends IteratingSystem {
     private void markDead(Entity entity){
         Logger.info(entity.getComponent(NameComponent.class).name + " is dead");
 
-        entity.remove(HealthComponent.class);
-        entity.remove(VelocityComponent.class);
-        entity.remove(InteractionComponent.class);
-        entity.remove(HostileTag.class);
+        commands.remove(entity, HealthComponent.class);
+        commands.remove(entity, VelocityComponent.class);
+        commands.remove(entity, InteractionComponent.class);
+        commands.remove(entity, HostileTag.class);
 
         //if there is some items, allow to take a loot
         if(entity.getComponent(InventoryComponent.class) != null) {
-            entity.add(new InteractiveComponent(new TransferAction(), 0));
+            commands.add(entity, new InteractiveComponent(new TransferAction(), 0));
         }
 
-        MessageManager.getInstance().dispatchMessage(MessageType.DEATH, entity);
+        killed.add(entity);
     }
 
     /**
@@ -7,9 +7,15 @@ import com.badlogic.ashley.systems.IteratingSystem;
 import ru.grishagin.components.DestinationComponent;
 import ru.grishagin.components.InteractionComponent;
 import ru.grishagin.components.InteractiveComponent;
+import ru.grishagin.components.NameComponent;
 import ru.grishagin.components.PositionComponent;
+import ru.grishagin.model.GameModel;
+import ru.grishagin.systems.scheduler.CommandBuffer;
+import ru.grishagin.systems.scheduler.ScheduledSystem;
+import ru.grishagin.systems.scheduler.SystemAccess;
+import ru.grishagin.utils.Logger;
 
-public class InteractionSystem extends IteratingSystem {
+public class InteractionSystem extends IteratingSystem implements ScheduledSystem {
     private static final float RANGE = 1.1f;
 
     private ComponentMapper<InteractiveComponent> interactiveMapper = ComponentMapper.getFor(InteractiveComponent.class);
@@ -17,10 +23,19 @@ public class InteractionSystem extends IteratingSystem {
     private ComponentMapper<PositionComponent> pm = ComponentMapper.getFor(PositionComponent.class);
     private ComponentMapper<DestinationComponent> dm = ComponentMapper.getFor(DestinationComponent.class);
 
+    private CommandBuffer commands = CommandBuffer.IMMEDIATE;
+
     public InteractionSystem() {
         super(Family.all(InteractionComponent.class, PositionComponent.class).get());
     }
 
+    //actions may do anything: open doors, send messages, move items
+    @Override
+    public void declareAccess(SystemAccess access) {
+        access.exclusive();
+        commands = access.getCommands(); //components of the interactors, actions change others' ones directly
+    }
+
     @Override
     protected void processEntity(Entity entity, float deltaTime) {
         InteractionComponent interactionAim = interactionMapper.get(entity);
@@ -33,12 +48,17 @@ public class InteractionSystem extends IteratingSystem {
         if(distance > RANGE){ //too far from interaction aim, need to go closer
             //add new destination if it doesn't exist
             if(interactorDestination == null){
-                entity.add(new DestinationComponent(interactionAimPosition.x, interactionAimPosition.y));
+                if(!GameModel.instance.movementSystem.isReachable(entity, interactionAimPosition.x, interactionAimPosition.y, RANGE)){
+                    Logger.info(interactionAim.aim.getComponent(NameComponent.class) + " can't be reached");
+                    commands.remove(entity, InteractionComponent.class);
+                    return;
+                }
+                commands.add(entity, new DestinationComponent(interactionAimPosition.x, interactionAimPosition.y, RANGE));
             }
         } else {
             interactiveMapper.get(interactionAim.aim).action.execute(entity, interactionAim.aim);
-            entity.remove(InteractionComponent.class);
-            entity.remove(DestinationComponent.class);
+            commands.remove(entity, InteractionComponent.class);
+            commands.remove(entity, DestinationComponent.class);
         }
     }
 }
@@ -15,11 +15,13 @@ import ru.grishagin.components.items.WeaponComponent;
 import ru.grishagin.components.tags.PlayerControlled;
 import ru.grishagin.entities.ItemFactory;
 import ru.grishagin.model.GameModel;
+import ru.grishagin.systems.scheduler.ScheduledSystem;
+import ru.grishagin.systems.scheduler.SystemAccess;
 import ru.grishagin.utils.Logger;
 
 import java.util.List;
 
-public class InventorySystem extends IteratingSystem {
+public class InventorySystem extends IteratingSystem implements ScheduledSystem {
     private ComponentMapper<InventoryComponent> im = ComponentMapper.getFor(InventoryComponent.class);
     private ComponentMapper<TypeIdComponent> tm = ComponentMapper.getFor(TypeIdComponent.class);
     private ComponentMapper<AmountComponent> am = ComponentMapper.getFor(AmountComponent.class);
@@ -28,6 +30,12 @@ public class InventorySystem extends IteratingSystem {
         super(Family.all(InventoryComponent.class).get());
     }
 
+    //items are moved by the UI and actions, not during the update
+    @Override
+    public void declareAccess(SystemAccess access) {
+        access.reads(InventoryComponent.class);
+    }
+
     @Override
     protected void processEntity(Entity entity, float deltaTime) {
         //TODO: update items in each inventory
@@ -1,15 +1,20 @@
 package ru.grishagin.systems;
 
 import com.badlogic.ashley.core.ComponentMapper;
+import com.badlogic.ashley.core.Engine;
 import com.badlogic.ashley.core.Entity;
+import com.badlogic.ashley.core.EntityListener;
 import com.badlogic.ashley.core.Family;
-import com.badlogic.ashley.systems.IteratingSystem;
 import com.badlogic.gdx.ai.msg.Telegram;
 import com.badlogic.gdx.ai.msg.Telegraph;
 import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.Heuristic;
 import com.badlogic.gdx.ai.pfa.PathSmoother;
-import com.badlogic.gdx.ai.pfa.indexed.IndexedAStarPathFinder;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
 import ru.grishagin.components.DestinationComponent;
 import ru.grishagin.components.NameComponent;
 import ru.grishagin.components.PositionComponent;
@@ -17,148 +22,719 @@ import ru.grishagin.components.VelocityComponent;
 import ru.grishagin.components.tags.DoorTag;
 import ru.grishagin.components.tags.ImpassableComponent;
 import ru.grishagin.components.tags.PlayerControlled;
-import ru.grishagin.model.GameModel;
+import ru.grishagin.model.map.RoofRegions;
 import ru.grishagin.model.map.TiledBasedMap;
+import ru.grishagin.model.map.TiledMapHelper;
 import ru.grishagin.model.messages.MessageType;
 import ru.grishagin.systems.patfinding.*;
+import ru.grishagin.systems.scheduler.CommandBuffer;
+import ru.grishagin.systems.scheduler.ParallelIteratingSystem;
+import ru.grishagin.systems.scheduler.SystemAccess;
 import ru.grishagin.utils.Logger;
 
-import static ru.grishagin.model.map.TiledBasedMap.ROOF_LAYER;
-
-public class MovementSystem extends IteratingSystem implements Telegraph {
+public class MovementSystem extends ParallelIteratingSystem<MovementSystem.Scratch> implements Telegraph {
     private static final float STOP_PRECISION = 0.1f;
+    private static final float ARRIVE_RADIUS = 0.5f; //tiles, entity slows down before the end of its path
+    private static final float MIN_ARRIVE_SPEED = 0.25f; //part of the full speed
+    public static final float DEFAULT_PATH_FINDING_BUDGET = 2; //milliseconds per frame
+    public static final float DEFAULT_BIDIRECTIONAL_DISTANCE = 16; //tiles
+    public static final float RESERVATION_SLOT = 0.2f; //seconds, one step at the usual speed of 5 tiles per second
+    private static final int REPLAN_STEPS = CooperativePlanner.DEFAULT_WINDOW / 2; //plan is renewed before it ends
+    private static final int MAX_REPLANNERS = 8; //paths repaired by D* Lite at once, the least recently used one gives way
+    private static final int REPAIR_MARGIN = 8; //tiles around the rest of the path a repaired path may go through
+    private static final int MAX_REPAIR_WINDOW = 96; //tiles on a side, paths wider than that are searched again instead
 
     private ComponentMapper<PositionComponent> pm = ComponentMapper.getFor(PositionComponent.class);
     private ComponentMapper<VelocityComponent> vm = ComponentMapper.getFor(VelocityComponent.class);
     private ComponentMapper<DestinationComponent> dm = ComponentMapper.getFor(DestinationComponent.class);
 
-    TiledGraph<FlatTiledNode> mapGraph;
-    TiledManhattanDistance<FlatTiledNode> heuristic;
-    IndexedAStarPathFinder<FlatTiledNode> pathFinder;
-    PathSmoother<FlatTiledNode, Vector2> pathSmoother;
+    GridTiledGraph mapGraph;
+    Heuristic<GridTiledNode> heuristic;
+    PathSmoother<GridTiledNode, Vector2> pathSmoother;
+
+    private PathFinderType pathFinderType = PathFinderType.A_STAR;
+    private boolean diagonalMovement;
+    private boolean landmarks;
+    private boolean mapLandmarks; //asked for by the map
+    private LandmarkHeuristic landmarkHeuristic;
+    private WalkabilityGrid openWalkability; //with all doors open
+    private String mapFileName;
+    private PathRequestProcessor pathRequests = new PathRequestQueue();
+    private PathCache pathCache;
+    private ConnectedRegions regions;
+    private LineOfSight lineOfSight;
+    //shared by all entities going to the same target
+    private final ObjectMap<Entity, FlowField> flowFields = new ObjectMap<Entity, FlowField>();
+    private final ObjectSet<Entity> usedFlowFields = new ObjectSet<Entity>();
+    private final IntArray repairedPath = new IntArray();
+    //the least recently used first, with the destinations they repair. Free ones have no destination and go first
+    private final Array<DStarLite> replanners = new Array<DStarLite>();
+    private final Array<DestinationComponent> replannerOwners = new Array<DestinationComponent>();
+    //entities following targets keep out of each other's way
+    private boolean cooperative = true;
+    private ReservationTable reservations;
+    private CooperativePlanner planner;
+    private float clock; //seconds since the map is set, gives reservation time slots
+    private int nextAgent;
+    //entities with reservations and the destinations they are made for, released when the destination goes away
+    private final ObjectMap<Entity, DestinationComponent> agents = new ObjectMap<Entity, DestinationComponent>();
+    private final Array<int[]> freePlans = new Array<int[]>(false, 16);
+    private final EntityListener agentListener = new EntityListener() {
+        @Override
+        public void entityAdded(Entity entity) {
+        }
+
+        @Override
+        public void entityRemoved(Entity entity) {
+            DestinationComponent destination = agents.remove(entity);
+            if(destination != null){
+                releaseAgent(destination);
+            }
+        }
+    };
+    private long pathFindingBudget = (long)(DEFAULT_PATH_FINDING_BUDGET * 1000000); //nanoseconds
+    private float bidirectionalDistance = DEFAULT_BIDIRECTIONAL_DISTANCE;
+    private final PathFindingMetrics metrics = new PathFindingMetrics();
+    private static final Family POSITIONED = Family.all(PositionComponent.class).get();
+    private SpatialHash spatialHash; //entities by tiles, kept up to date after each move
+    private RoofRegions roofs;
+    private int playerRegion = RoofRegions.OUTSIDE; //building the player is in, its roof is hidden
 
     public MovementSystem(){
         super(Family.all(DestinationComponent.class, PositionComponent.class, VelocityComponent.class).get());
     }
 
     public void setMap(TiledBasedMap map){
+        if(roofs != null){
+            roofs.showAll(); //the old map may be set again, it must be whole
+        }
         //convert map to graph
-        mapGraph = new FlatTiledGraph();
+        mapGraph = new GridTiledGraph(diagonalMovement);
         mapGraph.init(map);
 
-        heuristic = new TiledManhattanDistance<FlatTiledNode>();
-        //pathSmoother = new PathSmoother<FlatTiledNode, Vector2>(new TiledRaycastCollisionDetector<FlatTiledNode>());
-        pathFinder = new IndexedAStarPathFinder<FlatTiledNode>(mapGraph, true);
+        mapFileName = map.getFileName();
+        mapLandmarks = map.isLandmarks();
+        openWalkability = new WalkabilityGrid(mapGraph.getWalkability());
+        for (Vector2 door : TiledMapHelper.getDoorPositions(map)) {
+            if(openWalkability.isInside((int)door.x, (int)door.y)){
+                openWalkability.setWalkable(openWalkability.getIndex((int)door.x, (int)door.y), true);
+            }
+        }
+        landmarkHeuristic = null;
+        heuristic = createHeuristic();
+        lineOfSight = new LineOfSight(mapGraph.getWalkability());
+        mapGraph.addListener(lineOfSight);
+        pathSmoother = new PathSmoother<GridTiledNode, Vector2>(lineOfSight);
+        pathRequests.init(mapGraph, pathFinderType);
+
+        pathCache = new PathCache(mapGraph.getWalkability());
+        mapGraph.addListener(pathCache);
+        clearReplanners();
+        regions = new ConnectedRegions(mapGraph.getWalkability());
+        mapGraph.addListener(regions);
+        flowFields.clear();
+        usedFlowFields.clear();
+        reservations = new ReservationTable(CooperativePlanner.DEFAULT_WINDOW);
+        planner = new CooperativePlanner(mapGraph.getWalkability(), reservations);
+        clock = 0;
+        roofs = new RoofRegions(map);
+        playerRegion = RoofRegions.OUTSIDE;
+
+        Engine engine = getEngine();
+        if(engine != null && spatialHash != null){
+            engine.removeEntityListener(spatialHash);
+        }
+        spatialHash = new SpatialHash(map.getxSize(), map.getySize());
+        if(engine != null){
+            addSpatialHash(engine);
+        }
+    }
+
+    @Override
+    public void addedToEngine(Engine engine) {
+        super.addedToEngine(engine);
+        engine.addEntityListener(getFamily(), agentListener);
+        if(spatialHash != null){
+            addSpatialHash(engine);
+        }
     }
 
     @Override
-    protected void processEntity(Entity entity, float deltaTime) {
+    public void removedFromEngine(Engine engine) {
+        super.removedFromEngine(engine);
+        engine.removeEntityListener(agentListener);
+        if(spatialHash != null){
+            engine.removeEntityListener(spatialHash);
+            spatialHash.clear();
+        }
+    }
+
+    private void addSpatialHash(Engine engine) {
+        for (Entity entity : engine.getEntitiesFor(POSITIONED)) {
+            spatialHash.add(entity);
+        }
+        engine.addEntityListener(POSITIONED, spatialHash);
+    }
+
+    public SpatialHash getSpatialHash() {
+        return spatialHash;
+    }
+
+    public RoofRegions getRoofs() {
+        return roofs;
+    }
+
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
+    public GridTiledGraph getGraph() {
+        return mapGraph;
+    }
+
+    public LineOfSight getLineOfSight() {
+        return lineOfSight;
+    }
+
+    //costs of path queries over the last seconds, kept across maps
+    public PathFindingMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ConnectedRegions getRegions() {
+        return regions;
+    }
+
+    public ReservationTable getReservations() {
+        return reservations;
+    }
+
+    public CooperativePlanner getPlanner() {
+        return planner;
+    }
+
+    public boolean isCooperative() {
+        return cooperative;
+    }
+
+    //without it entities following targets go down the flow field ignoring each other
+    public void setCooperative(boolean cooperative) {
+        this.cooperative = cooperative;
+        if(reservations != null){
+            reservations.clear();
+        }
+    }
+
+    //constant time check by region labels, no search is done
+    public boolean isReachable(Entity entity, float x, float y, float range) {
+        PositionComponent position = pm.get(entity);
+        WalkabilityGrid walkability = mapGraph.getWalkability();
+        int start = walkability.getIndex((int)position.x, (int)position.y);
+        if(range > 0){
+            return regions.isReachable(start, PathGoal.withinRange((int)x, (int)y, range));
+        }
+        return regions.isReachable(start, walkability.getIndex((int)x, (int)y));
+    }
+
+    //synchronous time-sliced PathRequestQueue is used by default
+    public void setPathRequestProcessor(PathRequestProcessor pathRequests) {
+        this.pathRequests.dispose();
+        this.pathRequests = pathRequests;
+        if(mapGraph != null){
+            pathRequests.init(mapGraph, pathFinderType);
+        }
+    }
+
+    public PathRequestProcessor getPathRequestProcessor() {
+        return pathRequests;
+    }
+
+    //time in milliseconds which path finding may take each frame. Searches which don't fit are continued on the next frame
+    public void setPathFindingBudget(float milliseconds) {
+        pathFindingBudget = (long)(milliseconds * 1000000);
+    }
+
+    public float getPathFindingBudget() {
+        return pathFindingBudget / 1000000f;
+    }
+
+    //requests which are queued or in progress
+    public int getPendingPathRequests() {
+        return pathRequests.size();
+    }
+
+    public PathFinderType getPathFinderType() {
+        return pathFinderType;
+    }
+
+    //paths which are already built are not affected
+    public void setPathFinderType(PathFinderType pathFinderType) {
+        this.pathFinderType = pathFinderType;
+        if(mapGraph != null){
+            pathRequests.init(mapGraph, pathFinderType);
+            pathCache.clear(); //paths of the other finder may differ
+        }
+    }
+
+    public boolean isDiagonalMovement() {
+        return diagonalMovement;
+    }
+
+    //8-connected movement for graph based path finders. Paths which are already built are not affected
+    public void setDiagonalMovement(boolean diagonalMovement) {
+        this.diagonalMovement = diagonalMovement;
+        if(mapGraph != null){
+            mapGraph.setDiagonal(diagonalMovement);
+            heuristic = createHeuristic();
+            pathRequests.init(mapGraph, pathFinderType);
+            pathCache.clear();
+            clearReplanners();
+        }
+    }
+
+    public float getBidirectionalDistance() {
+        return bidirectionalDistance;
+    }
+
+    //A* requests at least this far by heuristic are searched from both ends. Zero or less turns it off
+    public void setBidirectionalDistance(float bidirectionalDistance) {
+        this.bidirectionalDistance = bidirectionalDistance;
+    }
+
+    public boolean isLandmarks() {
+        return landmarks;
+    }
+
+    //ALT heuristic for A* on every map, not only on the ones asking for it.
+    //Distance tables take 8 searches over the map to build, then they are cached, see LandmarkTable
+    public void setLandmarks(boolean landmarks) {
+        this.landmarks = landmarks;
+        if(mapGraph != null){
+            heuristic = createHeuristic();
+        }
+    }
+
+    //heuristic must match the costs, otherwise A* either expands too much or finds longer paths
+    private Heuristic<GridTiledNode> createHeuristic() {
+        Heuristic<GridTiledNode> heuristic;
+        if(diagonalMovement){
+            heuristic = new TiledOctileDistance<GridTiledNode>();
+        } else {
+            heuristic = new TiledManhattanDistance<GridTiledNode>();
+        }
+
+        if(landmarkHeuristic != null){
+            mapGraph.removeListener(landmarkHeuristic);
+            landmarkHeuristic = null;
+        }
+        if(landmarks || mapLandmarks){
+            LandmarkTable table = LandmarkTable.loadOrBuild(mapFileName, openWalkability, diagonalMovement, LandmarkTable.DEFAULT_LANDMARKS);
+            landmarkHeuristic = new LandmarkHeuristic(table, openWalkability, heuristic);
+            mapGraph.addListener(landmarkHeuristic);
+            heuristic = landmarkHeuristic;
+        }
+        return heuristic;
+    }
+
+    //stops entities by removing their destinations, and the roof of the player is a part of the map
+    @Override
+    public void declareAccess(SystemAccess access) {
+        super.declareAccess(access);
+        access.reads(PlayerControlled.class, NameComponent.class)
+                .writes(PositionComponent.class, VelocityComponent.class, DestinationComponent.class)
+                .exclusive();
+    }
+
+    @Override
+    public void update(float deltaTime) {
+        clock += deltaTime;
+        reservations.advance((int)(clock / RESERVATION_SLOT));
+        updateFlowFields();
+        super.update(deltaTime);
+        //paths requested during this frame are delivered on the next one
+        pathRequests.run(pathFindingBudget);
+    }
+
+    @Override
+    protected Scratch newScratch() {
+        return new Scratch();
+    }
+
+    //entities walking their built paths touch only their own components, all others need the shared state of the system
+    @Override
+    protected void processEntity(Entity entity, float deltaTime, Scratch scratch) {
+        DestinationComponent destination = dm.get(entity);
+        if(destination.target != null || destination.path == null || destination.pathRequest != null
+                || destination.reservedTiles != null || entity.getComponent(PlayerControlled.class) != null){
+            scratch.defer(entity);
+            return;
+        }
+        followPath(entity, deltaTime, scratch.commands);
+        if(spatialHash.isMoved(entity)){
+            scratch.moved.add(entity);
+        }
+    }
+
+    @Override
+    protected void endChunk(Scratch scratch) {
+        for (int i = 0; i < scratch.moved.size; i++) {
+            spatialHash.update(scratch.moved.get(i));
+        }
+        scratch.moved.clear();
+    }
+
+    @Override
+    protected void processDeferred(Entity entity, float deltaTime) {
+        move(entity, deltaTime);
+        spatialHash.update(entity);
+    }
+
+    private void move(Entity entity, float deltaTime) {
         PositionComponent position = pm.get(entity);
         VelocityComponent velocity = vm.get(entity);
         DestinationComponent destination = dm.get(entity);
 
-        if(destination.path == null){
-            TiledSmoothableGraphPath path = buildPath(position, destination);
-            destination.path = path;
-            Logger.info("Path for " + entity.getComponent(NameComponent.class) + " is built. Destination is " + destination.x + ", " + destination.y);
+        if(destination.target != null){
+            PositionComponent targetPosition = pm.get(destination.target);
+            if(targetPosition == null){
+                stop(entity);
+                return;
+            }
+            destination.x = targetPosition.x;
+            destination.y = targetPosition.y;
+        } else if(destination.path == null){
+            if(destination.pathRequest == null){
+                destination.pathRequest = requestPath(entity, position, destination);
+            }
+            if(!destination.pathRequest.isDone()){
+                //wait for the path
+                velocity.x = 0;
+                velocity.y = 0;
+                return;
+            }
+            EntityPathRequest request = (EntityPathRequest)destination.pathRequest;
+            if(!request.cached && !request.rejected){
+                metrics.recordSearch(request);
+            }
+            if(!request.pathFound){
+                Logger.info("Path for " + entity.getComponent(NameComponent.class) + " to " + destination.x + ", " + destination.y + " is not found");
+                stop(entity);
+                return;
+            }
+            if(request.goal != null){
+                //the path ends at the found goal tile
+                GridTiledNode lastNode = request.path.get(request.path.getCount() - 1);
+                destination.x = lastNode.x;
+                destination.y = lastNode.y;
+            } else if(!request.cached){
+                pathCache.put(request.startNode.getIndex(), request.endNode.getIndex(), request.path, request.graphVersion);
+            }
+            //cache keeps all tiles of the path, so it's smoothed afterwards
+            int tiles = request.path.getCount();
+            pathSmoother.smoothPath(request.path);
+            setPath(destination, request.path);
+            destination.pathRequest = null;
+            Logger.info("Path for " + entity.getComponent(NameComponent.class) + " is built. Destination is " + destination.x + ", " + destination.y
+                    + ", " + tiles + " tiles, " + request.path.getCount() + " waypoints");
         }
 
-        if(Math.abs(position.x - destination.x) < STOP_PRECISION && Math.abs(position.y - destination.y) < STOP_PRECISION){
+        if(destination.target == null){
+            followPath(entity, deltaTime, getCommands());
+        } else if(Math.abs(position.x - destination.x) < STOP_PRECISION && Math.abs(position.y - destination.y) < STOP_PRECISION){
             stop(entity);
         } else {
-            followPath(entity);
+            boolean inRange = destination.range > 0 && isInRange(position, destination);
+            if(cooperative){
+                followPlan(entity, getFlowField(destination.target), inRange, deltaTime);
+            } else if(inRange){
+                //wait here while the target is near, don't step on its tile
+                velocity.x = 0;
+                velocity.y = 0;
+            } else {
+                followFlowField(entity, getFlowField(destination.target), deltaTime);
+            }
         }
 
-        position.x += velocity.x*deltaTime;
-        position.y += velocity.y*deltaTime;
-
         if(entity.getComponent(PlayerControlled.class) != null){
             showHideRoof(position);
         }
     }
 
-    private void followPath(Entity entity){
+    /*
+     * The entity goes straight between waypoints, nextWaypoint only goes forward.
+     * The whole step of the frame is used: a waypoint reached in the middle of it is passed
+     * and the rest of the step goes along the next segment, so a long frame never carries the entity past a turn.
+     * Near the end of the path the entity slows down, it stops exactly at the last waypoint.
+     */
+    private void followPath(Entity entity, float deltaTime, CommandBuffer commands){
         PositionComponent position = pm.get(entity);
         VelocityComponent velocity = vm.get(entity);
         DestinationComponent destination = dm.get(entity);
 
-        FlatTiledNode currentNode = mapGraph.getNode((int)position.x, (int)position.y);
-        for (int i = 0; i < destination.path.nodes.size - 1; i++) { //entity cannot follow path if it has position == destination
-            FlatTiledNode node = destination.path.nodes.get(i);
-            //find node in the path where entity currently is standing on
-            if(node.x == currentNode.x && node.y == currentNode.y){
-                FlatTiledNode nextPathNode = destination.path.nodes.get(i + 1);
+        TiledSmoothableGraphPath<GridTiledNode> path = destination.path;
+        if(path.getCount() == 0){
+            Logger.info("Path for " + entity.getComponent(NameComponent.class) + " is lost");
+            stop(entity, commands);
+            return;
+        }
 
-                float deltaX = Math.abs(nextPathNode.x - position.x);
-                float deltaY = Math.abs(nextPathNode.y - position.y);
-                float distance = (float)Math.sqrt(deltaX*deltaX + deltaY*deltaY);
+        int last = path.getCount() - 1;
+        float step = velocity.speed * deltaTime;
+        while (true){
+            GridTiledNode waypoint = path.get(destination.nextWaypoint);
+            float deltaX = waypoint.x - position.x;
+            float deltaY = waypoint.y - position.y;
+            float distance = (float)Math.sqrt(deltaX*deltaX + deltaY*deltaY);
+            if(destination.nextWaypoint == last && distance < ARRIVE_RADIUS){
+                step = Math.min(step, velocity.speed * deltaTime * Math.max(distance / ARRIVE_RADIUS, MIN_ARRIVE_SPEED));
+            }
 
-                if(distance != 0) {
-                    float sin, cos;
-                    sin = deltaY / distance;
-                    cos = deltaX / distance;
+            if(distance > step){
+                velocity.x = deltaX / distance * velocity.speed;
+                velocity.y = deltaY / distance * velocity.speed;
+                position.x += deltaX / distance * step;
+                position.y += deltaY / distance * step;
+                return;
+            }
 
-                    velocity.x = velocity.speed * cos;
-                    velocity.y = velocity.speed * sin;
+            position.x = waypoint.x;
+            position.y = waypoint.y;
+            step -= distance;
+            if(destination.nextWaypoint == last){
+                stop(entity, commands);
+                return;
+            }
+            destination.nextWaypoint++;
+        }
+    }
 
-                    if (Math.abs(nextPathNode.x - position.x) > 0.1f) {
-                        if (nextPathNode.x - position.x < 0) {
-                            velocity.x = -velocity.x;
-                        }
-                    } else {
-                        position.x = nextPathNode.x;
-                        velocity.x = 0;
-                    }
+    //the first node is the tile the entity is standing on, it goes to the next one at once
+    private void setPath(DestinationComponent destination, TiledSmoothableGraphPath<GridTiledNode> path){
+        destination.path = path;
+        destination.nextWaypoint = Math.min(1, path.getCount() - 1);
+    }
 
-                    if (Math.abs(nextPathNode.y - position.y) > 0.1f) {
-                        if (nextPathNode.y - position.y < 0) {
-                            velocity.y = -velocity.y;
-                        }
-                    } else {
-                        position.y = nextPathNode.y;
-                        velocity.y = 0;
-                    }
-                }
+    private boolean isInRange(PositionComponent position, DestinationComponent destination){
+        float deltaX = destination.x - position.x;
+        float deltaY = destination.y - position.y;
+        return deltaX*deltaX + deltaY*deltaY <= destination.range*destination.range;
+    }
+
+    //the way is found by going down the flow field, one tile at a time
+    private void followFlowField(Entity entity, FlowField flowField, float deltaTime){
+        PositionComponent position = pm.get(entity);
+        VelocityComponent velocity = vm.get(entity);
+        DestinationComponent destination = dm.get(entity);
+
+        WalkabilityGrid walkability = mapGraph.getWalkability();
+        int currentTile = walkability.getIndex((int)position.x, (int)position.y);
+        int nextTile = flowField.getNextTile(currentTile);
+        if(nextTile != -1){
+            moveTo(position, velocity, walkability.getX(nextTile), walkability.getY(nextTile), deltaTime);
+        } else if(currentTile == flowField.getTarget()){
+            moveTo(position, velocity, destination.x, destination.y, deltaTime);
+        } else { //target is unreachable
+            velocity.x = 0;
+            velocity.y = 0;
+        }
+    }
+
+    /*
+     * Like followFlowField(), but the next few steps are planned together with other entities following targets,
+     * see CooperativePlanner. The plan is renewed every few steps, or at once if the entity is off it.
+     * Entity in range of the target stops only on a tile which nobody else has reserved, and keeps it.
+     */
+    private void followPlan(Entity entity, FlowField flowField, boolean inRange, float deltaTime){
+        PositionComponent position = pm.get(entity);
+        VelocityComponent velocity = vm.get(entity);
+        DestinationComponent destination = dm.get(entity);
+
+        WalkabilityGrid walkability = mapGraph.getWalkability();
+        int currentTile = walkability.getIndex((int)position.x, (int)position.y);
+        //plan steps are tile points, so progress on the plan is judged by the nearest one: moving to a point
+        //with a smaller coordinate the entity truncates onto it at once, moving to a larger one only on arrival,
+        //and a truncated check would take the latter for being off the plan. Used for nothing but this check
+        int planTile = walkability.getIndex((int)(position.x + 0.5f), (int)(position.y + 0.5f));
+        if(currentTile == flowField.getTarget()){
+            moveTo(position, velocity, destination.x, destination.y, deltaTime);
+            return;
+        }
+
+        int time = reservations.getTime();
+        int step = time - destination.reservedFrom;
+        boolean planned = destination.reservedTiles != null && step >= 0 && step < REPLAN_STEPS;
+        if(inRange && isFree(destination.agent, currentTile, time)){
+            if(!planned || destination.reservedTiles[step] != currentTile
+                    || destination.reservedTiles[CooperativePlanner.DEFAULT_WINDOW] != currentTile){
+                releaseTiles(entity, destination);
+                planner.hold(destination.agent, currentTile, destination.reservedTiles);
+                destination.reservedFrom = time;
+            }
+            //waiting entity doesn't stop halfway between tiles
+            moveTo(position, velocity, walkability.getX(currentTile), walkability.getY(currentTile), deltaTime);
+            return;
+        }
+
+        if(!planned || destination.reservedTiles[step] != planTile && destination.reservedTiles[step + 1] != planTile){
+            releaseTiles(entity, destination);
+            planner.plan(destination.agent, currentTile, flowField, destination.range == 0, destination.reservedTiles);
+            metrics.recordPlan(planner.getExpandedNodes());
+            destination.reservedFrom = time;
+            step = 0;
+        }
+        int nextTile = destination.reservedTiles[step + 1];
+        moveTo(position, velocity, walkability.getX(nextTile), walkability.getY(nextTile), deltaTime);
+    }
+
+    //a tile may be kept if nobody else is going to be there in the current and the next slot
+    private boolean isFree(int agent, int tile, int time){
+        for (int t = time; t <= time + 1; t++) {
+            int other = reservations.getAgent(tile, t);
+            if(other != ReservationTable.NO_AGENT && other != agent){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //previous plan is dropped, a new agent gets its id and plan array. So is the agent of a replaced destination
+    private void releaseTiles(Entity entity, DestinationComponent destination){
+        if(destination.reservedTiles == null){
+            destination.agent = nextAgent++;
+            destination.reservedTiles = freePlans.size > 0 ? freePlans.pop() : new int[CooperativePlanner.DEFAULT_WINDOW + 1];
+            DestinationComponent previous = agents.put(entity, destination);
+            if(previous != null && previous != destination){
+                releaseAgent(previous);
             }
+        } else {
+            planner.release(destination.agent, destination.reservedTiles, destination.reservedFrom);
+        }
+    }
+
+    //plan array is reused by the next agent
+    private void releaseAgent(DestinationComponent destination){
+        if(destination.reservedTiles != null){
+            planner.release(destination.agent, destination.reservedTiles, destination.reservedFrom);
+            freePlans.add(destination.reservedTiles);
+            destination.reservedTiles = null;
+        }
+    }
+
+    //goes straight to the point at full speed and stops exactly there if it's reached during this frame
+    private void moveTo(PositionComponent position, VelocityComponent velocity, float x, float y, float deltaTime){
+        float deltaX = x - position.x;
+        float deltaY = y - position.y;
+        float distance = (float)Math.sqrt(deltaX*deltaX + deltaY*deltaY);
+        if(distance <= velocity.speed * deltaTime){
+            position.x = x;
+            position.y = y;
+            velocity.x = 0;
+            velocity.y = 0;
+            return;
         }
+
+        velocity.x = deltaX / distance * velocity.speed;
+        velocity.y = deltaY / distance * velocity.speed;
+        position.x += velocity.x * deltaTime;
+        position.y += velocity.y * deltaTime;
+    }
+
+    private FlowField getFlowField(Entity target){
+        FlowField flowField = flowFields.get(target);
+        if(flowField == null){
+            flowField = new FlowField(mapGraph.getWalkability());
+            PositionComponent targetPosition = pm.get(target);
+            flowField.setTarget(mapGraph.getWalkability().getIndex((int)targetPosition.x, (int)targetPosition.y));
+            mapGraph.addListener(flowField);
+            flowFields.put(target, flowField);
+        }
+        usedFlowFields.add(target);
+        return flowField;
+    }
+
+    //fields which nobody used during the last frame are dropped, others follow their targets
+    private void updateFlowFields(){
+        WalkabilityGrid walkability = mapGraph.getWalkability();
+        ObjectMap.Entries<Entity, FlowField> entries = flowFields.entries();
+        while (entries.hasNext()){
+            ObjectMap.Entry<Entity, FlowField> entry = entries.next();
+            PositionComponent targetPosition = pm.get(entry.key);
+            if(!usedFlowFields.contains(entry.key) || targetPosition == null){
+                mapGraph.removeListener(entry.value);
+                entries.remove();
+            } else {
+                entry.value.setTarget(walkability.getIndex((int)targetPosition.x, (int)targetPosition.y));
+            }
+        }
+        usedFlowFields.clear();
     }
 
     private void stop(Entity entity){
-        entity.remove(DestinationComponent.class);
+        stop(entity, getCommands());
+    }
+
+    //commands of a chunk if called from it, only entities without requests and reservations are stopped there
+    private void stop(Entity entity, CommandBuffer commands){
+        DestinationComponent destination = dm.get(entity);
+        if(destination.pathRequest != null){
+            destination.pathRequest.cancel();
+        }
+        if(destination.reservedTiles != null){
+            agents.remove(entity);
+            releaseAgent(destination);
+        }
+        commands.remove(entity, DestinationComponent.class);
         VelocityComponent velocity = vm.get(entity);
         velocity.x = 0;
         velocity.y = 0;
     }
 
-    private TiledSmoothableGraphPath buildPath(PositionComponent position, DestinationComponent destination){
-        FlatTiledNode startNode = mapGraph.getNode((int)position.x, (int)position.y);
-        FlatTiledNode endNode = mapGraph.getNode((int)destination.x, (int)destination.y);
-
-        TiledSmoothableGraphPath<FlatTiledNode> path = new TiledSmoothableGraphPath<FlatTiledNode>();
+    private PathRequest requestPath(Entity entity, PositionComponent position, DestinationComponent destination){
+        GridTiledNode startNode = mapGraph.getNode((int)position.x, (int)position.y);
+        GridTiledNode endNode = mapGraph.getNode((int)destination.x, (int)destination.y);
 
-        //if end node is unavailable, build path for the closest available
-        if(endNode.getType() == TileNodeType.IMPASSABLE){
-            mapGraph.changeNodeType(endNode.getIndex(), TileNodeType.NORMAL);
-            pathFinder.searchNodePath(startNode, endNode, heuristic, path);
-            endNode = path.nodes.get(path.nodes.size - 2);//previous before last (impassable) node
-            mapGraph.changeNodeType(mapGraph.getNode((int)destination.x, (int)destination.y).getIndex(), TileNodeType.IMPASSABLE);//change type back
-            path.clear();
+        //unavailable end node can't be reached, go to the closest of its neighbours instead
+        PathGoal goal = null;
+        if(destination.range > 0){
+            goal = PathGoal.withinRange(endNode.x, endNode.y, destination.range);
+        } else if(endNode.getType() == TileNodeType.IMPASSABLE){
+            goal = PathGoal.adjacentTo(endNode.x, endNode.y);
+        }
 
-            destination.x = endNode.x;
-            destination.y = endNode.y;
+        EntityPathRequest request = new EntityPathRequest(entity, destination, startNode, endNode, heuristic);
+        request.goal = goal;
+        request.graphVersion = mapGraph.getWalkability().getVersion();
+        request.bidirectional = isBidirectional(startNode, endNode);
+        boolean reachable = goal != null ? regions.isReachable(startNode.getIndex(), goal)
+                : regions.isReachable(startNode.getIndex(), endNode.getIndex());
+        if(!reachable){
+            //the whole region of the start would be searched in vain
+            request.rejected = true;
+            request.finish(false);
+            metrics.recordRejected();
+        } else if(goal == null && pathCache.get(mapGraph, startNode.getIndex(), endNode.getIndex(), request.path)){
+            request.cached = true;
+            request.finish(true);
+            metrics.recordCacheHit(request.path.getCount());
+        } else {
+            pathRequests.add(request);
         }
+        return request;
+    }
 
-        pathFinder.searchNodePath(startNode, endNode, heuristic, path);
-        return path;
+    //long routes only, short ones gain nothing. Other finder types are faster anyway
+    private boolean isBidirectional(GridTiledNode startNode, GridTiledNode endNode){
+        return pathFinderType == PathFinderType.A_STAR && bidirectionalDistance > 0
+                && heuristic.estimate(startNode, endNode) >= bidirectionalDistance;
     }
 
-    //roof layer has vertical offset
+    //roof layer has vertical offset. Roofs are touched only when the player goes in or out of a building
     private void showHideRoof(PositionComponent playerPosition){
-        TiledBasedMap currentMap = GameModel.instance.getCurrentMap();
-        if(currentMap.hasObject(playerPosition.x, playerPosition.y, ROOF_LAYER)){
-            currentMap.setLayerVisibility(ROOF_LAYER, false);
-        } else {
-            currentMap.setLayerVisibility(ROOF_LAYER, true);
+        int region = roofs.getRegion((int)playerPosition.x, (int)playerPosition.y);
+        if(region != playerRegion){
+            roofs.setHidden(playerRegion, false);
+            roofs.setHidden(region, true);
+            playerRegion = region;
         }
     }
 
@@ -167,7 +743,7 @@ public class MovementSystem extends IteratingSystem implements Telegraph {
         if(msg.extraInfo != null){
             Entity entity = (Entity)msg.extraInfo;
             PositionComponent position = pm.get(entity);
-            FlatTiledNode node = mapGraph.getNode((int)position.x, (int)position.y);
+            GridTiledNode node = mapGraph.getNode((int)position.x, (int)position.y);
 
             switch (msg.message){
                 case MessageType.CLOSED:
@@ -178,9 +754,11 @@ public class MovementSystem extends IteratingSystem implements Telegraph {
                         if(impassableComponent == null){
                             entity.add(new ImpassableComponent());
                             mapGraph.changeNodeType(node.getIndex(), TileNodeType.IMPASSABLE);
+                            repairPaths(node.getIndex(), false);
                         } else {
                             entity.remove(ImpassableComponent.class);
                             mapGraph.changeNodeType(node.getIndex(), TileNodeType.NORMAL);
+                            repairPaths(node.getIndex(), true);
                         }
                     }
                     break;
@@ -188,4 +766,158 @@ public class MovementSystem extends IteratingSystem implements Telegraph {
         }
         return true;
     }
+
+    /*
+     * Built paths going through a closed tile are replanned by D* Lite kept in the destination,
+     * so the next door on the same route repairs the previous search instead of doing it again.
+     * Opened tiles are passed only to existing replanners: they can't break a path, but may give a shorter one.
+     *
+     * Replanners are shared: there are at most MAX_REPLANNERS of them, and each searches only a window around
+     * the rest of its path. Paths too wide for a window, or whose replanner was given to another one,
+     * are searched again from the current tile like new ones.
+     */
+    private void repairPaths(int index, boolean walkable){
+        WalkabilityGrid walkability = mapGraph.getWalkability();
+        for (Entity entity : getEntities()) {
+            DestinationComponent destination = dm.get(entity);
+            if(destination.target != null || destination.path == null || destination.path.getCount() == 0){
+                continue;
+            }
+
+            PositionComponent position = pm.get(entity);
+            int currentTile = walkability.getIndex((int)position.x, (int)position.y);
+            if(destination.replanner != null && !destination.replanner.contains(currentTile)){
+                releaseReplanner(destination);
+            }
+            if(destination.replanner == null){
+                if(walkable || !isBlocked(destination, currentTile)){
+                    continue;
+                }
+                if(!obtainReplanner(destination, currentTile)){
+                    destination.path = null; //requested again on the next update
+                    Logger.info("Path for " + entity.getComponent(NameComponent.class) + " is broken and searched again");
+                    continue;
+                }
+            } else {
+                useReplanner(destination);
+                destination.replanner.moveStart(currentTile);
+                destination.replanner.tileChanged(index);
+            }
+
+            destination.path.clear();
+            if(destination.replanner.plan() && destination.replanner.getPath(repairedPath)){
+                for (int i = 0; i < repairedPath.size; i++) {
+                    destination.path.add(mapGraph.getNode(repairedPath.get(i)));
+                }
+                pathSmoother.smoothPath(destination.path);
+            }
+            setPath(destination, destination.path);
+            Logger.info("Path for " + entity.getComponent(NameComponent.class) + " is repaired, " + destination.path.getCount() + " tiles");
+        }
+    }
+
+    //window is the bounding box of the current tile and the rest of the path with a margin. False if it's too wide
+    private boolean obtainReplanner(DestinationComponent destination, int currentTile){
+        WalkabilityGrid walkability = mapGraph.getWalkability();
+        int fromX = walkability.getX(currentTile);
+        int fromY = walkability.getY(currentTile);
+        int toX = fromX;
+        int toY = fromY;
+        for (int i = destination.nextWaypoint; i < destination.path.getCount(); i++) {
+            GridTiledNode waypoint = destination.path.get(i);
+            fromX = Math.min(fromX, waypoint.x);
+            fromY = Math.min(fromY, waypoint.y);
+            toX = Math.max(toX, waypoint.x);
+            toY = Math.max(toY, waypoint.y);
+        }
+        if(toX - fromX + 1 + REPAIR_MARGIN * 2 > MAX_REPAIR_WINDOW || toY - fromY + 1 + REPAIR_MARGIN * 2 > MAX_REPAIR_WINDOW){
+            return false;
+        }
+
+        DStarLite replanner;
+        if(replanners.size < MAX_REPLANNERS && (replanners.size == 0 || replannerOwners.first() != null)){
+            replanner = new DStarLite(walkability, diagonalMovement);
+        } else {
+            replanner = replanners.removeIndex(0);
+            DestinationComponent owner = replannerOwners.removeIndex(0);
+            if(owner != null){
+                owner.replanner = null;
+            }
+        }
+        replanners.add(replanner);
+        replannerOwners.add(destination);
+        destination.replanner = replanner;
+        replanner.init(currentTile, destination.path.get(destination.path.getCount() - 1).getIndex(),
+                fromX - REPAIR_MARGIN, fromY - REPAIR_MARGIN, toX + REPAIR_MARGIN, toY + REPAIR_MARGIN);
+        return true;
+    }
+
+    //the replanner becomes the most recently used one
+    private void useReplanner(DestinationComponent destination){
+        int index = replanners.indexOf(destination.replanner, true);
+        replanners.add(replanners.removeIndex(index));
+        replannerOwners.add(replannerOwners.removeIndex(index));
+    }
+
+    //the replanner goes first to be taken by the next broken path
+    private void releaseReplanner(DestinationComponent destination){
+        int index = replanners.indexOf(destination.replanner, true);
+        replanners.insert(0, replanners.removeIndex(index));
+        replannerOwners.removeIndex(index);
+        replannerOwners.insert(0, null);
+        destination.replanner = null;
+    }
+
+    //replanners search the grid of the map with its movement rules, so they are dropped when any of it changes
+    private void clearReplanners(){
+        for (int i = 0; i < replannerOwners.size; i++) {
+            if(replannerOwners.get(i) != null){
+                replannerOwners.get(i).replanner = null;
+            }
+        }
+        replanners.clear();
+        replannerOwners.clear();
+    }
+
+    //waypoints are connected by lines of sight, the part which is not passed yet is checked again
+    private boolean isBlocked(DestinationComponent destination, int currentTile){
+        WalkabilityGrid walkability = mapGraph.getWalkability();
+        int x = walkability.getX(currentTile);
+        int y = walkability.getY(currentTile);
+        for (int i = destination.nextWaypoint; i < destination.path.getCount(); i++) {
+            GridTiledNode waypoint = destination.path.get(i);
+            if(!walkability.isWalkable(waypoint.getIndex()) || !lineOfSight.isClear(x, y, waypoint.x, waypoint.y)){
+                return true;
+            }
+            x = waypoint.x;
+            y = waypoint.y;
+        }
+        return false;
+    }
+
+    //entities of a chunk which have left their tiles in the spatial hash, it's updated on the calling thread
+    static class Scratch extends ParallelIteratingSystem.Scratch {
+        private final Array<Entity> moved = new Array<Entity>();
+    }
+
+    //dropped if the entity has got another destination or has lost it while the request was waiting
+    private static class EntityPathRequest extends PathRequest {
+        private final Entity entity;
+        private final DestinationComponent destination;
+        int graphVersion; //the path is cached only if nothing has changed during the search
+        boolean cached;
+        boolean rejected; //known to have no path, not searched
+
+        EntityPathRequest(Entity entity, DestinationComponent destination,
+                          GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic) {
+            super(startNode, endNode, heuristic);
+            this.entity = entity;
+            this.destination = destination;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return super.isCancelled() || entity.getComponent(DestinationComponent.class) != destination;
+        }
+    }
 }
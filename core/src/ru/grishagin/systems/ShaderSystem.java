@@ -8,10 +8,20 @@ import com.badlogic.gdx.ai.msg.Telegraph;
 import com.badlogic.gdx.graphics.Color;
 import ru.grishagin.components.InteractiveComponent;
 import ru.grishagin.components.ShaderComponent;
+import ru.grishagin.systems.scheduler.ScheduledSystem;
+import ru.grishagin.systems.scheduler.SystemAccess;
 
 import java.util.Collections;
 
-public class ShaderSystem extends EntitySystem implements Telegraph {
+public class ShaderSystem extends EntitySystem implements Telegraph, ScheduledSystem {
+
+    //messages are handled in the thread of the sender, and the shader of a dead entity may be removed directly
+    @Override
+    public void declareAccess(SystemAccess access) {
+        access.reads(InteractiveComponent.class)
+                .writes(ShaderComponent.class)
+                .exclusive();
+    }
 
     //subscription on the DEATH events
     @Override
@@ -8,12 +8,21 @@ import com.badlogic.gdx.ai.msg.Telegraph;
 import com.badlogic.gdx.audio.Sound;
 import ru.grishagin.components.SoundComponent;
 import ru.grishagin.components.TypeIdComponent;
+import ru.grishagin.systems.scheduler.ScheduledSystem;
+import ru.grishagin.systems.scheduler.SystemAccess;
 import ru.grishagin.utils.AssetManager;
 import ru.grishagin.utils.Logger;
 
-public class SoundSystem extends EntitySystem implements Telegraph {
+public class SoundSystem extends EntitySystem implements Telegraph, ScheduledSystem {
     private ComponentMapper<SoundComponent> sm = ComponentMapper.getFor(SoundComponent.class);
 
+    //messages are handled in the thread of the sender, sounds are played on the game thread only
+    @Override
+    public void declareAccess(SystemAccess access) {
+        access.reads(SoundComponent.class)
+                .exclusive();
+    }
+
     @Override
     public boolean handleMessage(Telegram msg) {
         if(msg.extraInfo != null){
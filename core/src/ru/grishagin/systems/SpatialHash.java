@@ -0,0 +1,230 @@
+package ru.grishagin.systems;
+
+import com.badlogic.ashley.core.ComponentMapper;
+import com.badlogic.ashley.core.Entity;
+import com.badlogic.ashley.core.EntityListener;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import ru.grishagin.components.PositionComponent;
+
+/*
+ * Entities with positions by the tile they stand on: one bucket per tile of the map, bucket is a linked list of slots.
+ * Entities are added and removed as an engine listener, MovementSystem calls update() after moving an entity,
+ * so the bucket changes only when the entity crosses a tile boundary.
+ *
+ * Queries add the found entities to the given array and allocate nothing themselves,
+ * they cost the number of tiles looked at plus the entities on them, whatever the total number of entities is.
+ * Entities outside of the map (some objects stand a bit out of it) are kept in the nearest edge tile,
+ * so queries by tiles may return them at the edge, the radius query checks real positions anyway.
+ */
+public class SpatialHash implements EntityListener {
+
+    private static final int NONE = -1;
+
+    private ComponentMapper<PositionComponent> pm = ComponentMapper.getFor(PositionComponent.class);
+
+    private final int width;
+    private final int height;
+    private final int[] heads; //first slot of each tile
+
+    //by slot
+    private Entity[] entities = new Entity[16];
+    private int[] tiles = new int[16];
+    private int[] next = new int[16];
+    private int[] previous = new int[16];
+    private final ObjectIntMap<Entity> slots = new ObjectIntMap<Entity>();
+    private final IntArray freeSlots = new IntArray();
+    private int slotCount;
+
+    public SpatialHash(int width, int height) {
+        this.width = width;
+        this.height = height;
+        heads = new int[width * height];
+        clear();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int size() {
+        return slots.size;
+    }
+
+    @Override
+    public void entityAdded(Entity entity) {
+        add(entity);
+    }
+
+    @Override
+    public void entityRemoved(Entity entity) {
+        remove(entity);
+    }
+
+    public void add(Entity entity) {
+        if(slots.containsKey(entity)){
+            update(entity);
+            return;
+        }
+
+        int slot = freeSlots.size > 0 ? freeSlots.pop() : newSlot();
+        entities[slot] = entity;
+        tiles[slot] = NONE;
+        slots.put(entity, slot);
+        link(slot, getTile(pm.get(entity)));
+    }
+
+    public void remove(Entity entity) {
+        int slot = slots.remove(entity, NONE);
+        if(slot == NONE){
+            return;
+        }
+        unlink(slot);
+        entities[slot] = null;
+        freeSlots.add(slot);
+    }
+
+    //moves the entity to the bucket of its current tile. Returns true if the tile has changed
+    public boolean update(Entity entity) {
+        int slot = slots.get(entity, NONE);
+        if(slot == NONE){
+            return false;
+        }
+        int tile = getTile(pm.get(entity));
+        if(tile == tiles[slot]){
+            return false;
+        }
+        unlink(slot);
+        link(slot, tile);
+        return true;
+    }
+
+    //true if update() would move the entity to another tile. Only reads, so chunks may ask it at the same time
+    public boolean isMoved(Entity entity) {
+        int slot = slots.get(entity, NONE);
+        return slot != NONE && getTile(pm.get(entity)) != tiles[slot];
+    }
+
+    public void clear() {
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = NONE;
+        }
+        for (int i = 0; i < slotCount; i++) {
+            entities[i] = null;
+        }
+        slots.clear();
+        freeSlots.clear();
+        slotCount = 0;
+    }
+
+    //entities standing on the tile are added to out
+    public Array<Entity> getEntities(int x, int y, Array<Entity> out) {
+        if(isInside(x, y)){
+            for (int slot = heads[x * height + y]; slot != NONE; slot = next[slot]) {
+                out.add(entities[slot]);
+            }
+        }
+        return out;
+    }
+
+    //entities on the tiles of the rectangle, bounds included, are added to out
+    public Array<Entity> getEntities(int fromX, int fromY, int toX, int toY, Array<Entity> out) {
+        fromX = Math.max(fromX, 0);
+        fromY = Math.max(fromY, 0);
+        toX = Math.min(toX, width - 1);
+        toY = Math.min(toY, height - 1);
+        for (int x = fromX; x <= toX; x++) {
+            for (int y = fromY; y <= toY; y++) {
+                for (int slot = heads[x * height + y]; slot != NONE; slot = next[slot]) {
+                    out.add(entities[slot]);
+                }
+            }
+        }
+        return out;
+    }
+
+    //entities not farther than the radius from the point are added to out. Distance is the same as in SystemHelper
+    public Array<Entity> getEntitiesInRadius(float x, float y, float radius, Array<Entity> out) {
+        //clamped at both ends to look at the edge tiles, where entities outside of the map are
+        int fromX = clamp((int)Math.floor(x - radius), width);
+        int fromY = clamp((int)Math.floor(y - radius), height);
+        int toX = clamp((int)Math.floor(x + radius), width);
+        int toY = clamp((int)Math.floor(y + radius), height);
+        for (int tileX = fromX; tileX <= toX; tileX++) {
+            for (int tileY = fromY; tileY <= toY; tileY++) {
+                for (int slot = heads[tileX * height + tileY]; slot != NONE; slot = next[slot]) {
+                    PositionComponent position = pm.get(entities[slot]);
+                    float deltaX = position.x - x;
+                    float deltaY = position.y - y;
+                    if(deltaX*deltaX + deltaY*deltaY <= radius*radius){
+                        out.add(entities[slot]);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private boolean isInside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    //the same tile as everywhere else: position is truncated
+    private int getTile(PositionComponent position) {
+        return clamp((int)position.x, width) * height + clamp((int)position.y, height);
+    }
+
+    private static int clamp(int coordinate, int size) {
+        return Math.min(Math.max(coordinate, 0), size - 1);
+    }
+
+    private void link(int slot, int tile) {
+        tiles[slot] = tile;
+        previous[slot] = NONE;
+        next[slot] = heads[tile];
+        if(heads[tile] != NONE){
+            previous[heads[tile]] = slot;
+        }
+        heads[tile] = slot;
+    }
+
+    private void unlink(int slot) {
+        int tile = tiles[slot];
+        if(tile == NONE){
+            return;
+        }
+        if(previous[slot] != NONE){
+            next[previous[slot]] = next[slot];
+        } else {
+            heads[tile] = next[slot];
+        }
+        if(next[slot] != NONE){
+            previous[next[slot]] = previous[slot];
+        }
+        tiles[slot] = NONE;
+    }
+
+    private int newSlot() {
+        if(slotCount == entities.length){
+            int capacity = slotCount * 2;
+            Entity[] newEntities = new Entity[capacity];
+            System.arraycopy(entities, 0, newEntities, 0, slotCount);
+            entities = newEntities;
+            tiles = copyOf(tiles, capacity);
+            next = copyOf(next, capacity);
+            previous = copyOf(previous, capacity);
+        }
+        return slotCount++;
+    }
+
+    private static int[] copyOf(int[] array, int capacity) {
+        int[] copy = new int[capacity];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
@@ -0,0 +1,218 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.ai.pfa.Heuristic;
+import com.badlogic.gdx.ai.pfa.PathFinder;
+import com.badlogic.gdx.ai.pfa.PathFinderRequest;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/*
+ * A* run from both ends at once over the same connections and costs as IndexedAStarPathFinder.
+ * Each step expands the side with the smaller open list. Every time a side reaches a tile already reached by
+ * the other one, the joined path becomes a candidate. The search stops when the smallest estimate in either
+ * open list is not better than the best candidate, so the path is as short as the one of plain A*.
+ *
+ * Pays off on long routes: two searches of half the length expand less than one of the full length.
+ * On routes of a few tiles both searches expand about the same, the second open list makes it a tie.
+ * Costs must be the same in both directions, which is true for the grid. The heuristic must be symmetric
+ * (distance and landmark heuristics are), the backward side estimates the distance to the start with it.
+ */
+public class BidirectionalAStarPathFinder implements PathFinder<GridTiledNode> {
+
+    private static final long TIME_TOLERANCE = 100; //nanoseconds, the same as in gdx-ai PathFinderQueue
+
+    private final GridTiledGraph graph;
+    private final Side forward;
+    private final Side backward;
+    private int searchId;
+
+    //state of the current search, kept between calls of search(request, timeToRun)
+    private GridTiledNode startNode;
+    private GridTiledNode endNode;
+    private Heuristic<GridTiledNode> heuristic;
+    private float bestCost;
+    private int meetingNode;
+    private final IntArray tiles = new IntArray(); //filled by getPath()
+
+    private int expandedNodes;
+
+    public BidirectionalAStarPathFinder(GridTiledGraph graph) {
+        this.graph = graph;
+        forward = new Side(graph.getNodeCount());
+        backward = new Side(graph.getNodeCount());
+    }
+
+    //nodes expanded by both sides of the last search
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    @Override
+    public boolean searchNodePath(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic,
+                                  GraphPath<GridTiledNode> outPath) {
+        initSearch(startNode, endNode, heuristic);
+        while (!isFinished()){
+            expand();
+        }
+        return getPath(outPath);
+    }
+
+    @Override
+    public boolean searchConnectionPath(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic,
+                                        GraphPath<Connection<GridTiledNode>> outPath) {
+        initSearch(startNode, endNode, heuristic);
+        while (!isFinished()){
+            expand();
+        }
+        if(!getPath(tiles)){
+            return false;
+        }
+        graph.addConnections(tiles, outPath);
+        return true;
+    }
+
+    //interrupted search is resumed on the next call with the same request, like IndexedAStarPathFinder does
+    @Override
+    public boolean search(PathFinderRequest<GridTiledNode> request, long timeToRun) {
+        long lastTime = TimeUtils.nanoTime();
+        if(request.statusChanged){
+            initSearch(request.startNode, request.endNode, request.heuristic);
+            request.statusChanged = false;
+        }
+
+        while (!isFinished()){
+            long currentTime = TimeUtils.nanoTime();
+            timeToRun -= currentTime - lastTime;
+            if(timeToRun <= TIME_TOLERANCE){
+                return false;
+            }
+            lastTime = currentTime;
+            expand();
+        }
+
+        request.pathFound = getPath(request.resultPath);
+        return true;
+    }
+
+    private void initSearch(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic) {
+        this.startNode = startNode;
+        this.endNode = endNode;
+        this.heuristic = heuristic;
+        expandedNodes = 0;
+        bestCost = Float.MAX_VALUE;
+        meetingNode = -1;
+        searchId++;
+
+        forward.openList.clear();
+        backward.openList.clear();
+        if(startNode == endNode){
+            bestCost = 0;
+            meetingNode = startNode.getIndex();
+            return;
+        }
+        forward.open(startNode.getIndex(), 0, -1, heuristic.estimate(startNode, endNode), searchId);
+        backward.open(endNode.getIndex(), 0, -1, heuristic.estimate(endNode, startNode), searchId);
+    }
+
+    //nothing left to search or no open tile may give a shorter path than the found one
+    private boolean isFinished() {
+        if(forward.openList.isEmpty() || backward.openList.isEmpty()){
+            return true;
+        }
+        return forward.getMinEstimate() >= bestCost || backward.getMinEstimate() >= bestCost;
+    }
+
+    private void expand() {
+        boolean isForward = forward.openList.size() <= backward.openList.size();
+        Side side = isForward ? forward : backward;
+        Side other = isForward ? backward : forward;
+        GridTiledNode target = isForward ? endNode : startNode;
+
+        int node = side.openList.poll();
+        side.closedIn[node] = searchId;
+        expandedNodes++;
+
+        Array<Connection<GridTiledNode>> connections = graph.getConnections(graph.getNode(node));
+        for (int i = 0; i < connections.size; i++) {
+            Connection<GridTiledNode> connection = connections.get(i);
+            GridTiledNode neighbourNode = connection.getToNode();
+            int neighbour = neighbourNode.getIndex();
+            if(side.closedIn[neighbour] == searchId){
+                continue;
+            }
+
+            float cost = side.costs[node] + connection.getCost();
+            if(side.openedIn[neighbour] == searchId && cost >= side.costs[neighbour]){
+                continue;
+            }
+            side.open(neighbour, cost, node, cost + heuristic.estimate(neighbourNode, target), searchId);
+
+            if(other.openedIn[neighbour] == searchId && cost + other.costs[neighbour] < bestCost){
+                bestCost = cost + other.costs[neighbour];
+                meetingNode = neighbour;
+            }
+        }
+    }
+
+    private boolean getPath(GraphPath<GridTiledNode> outPath) {
+        if(!getPath(tiles)){
+            return false;
+        }
+        for (int i = 0; i < tiles.size; i++) {
+            outPath.add(graph.getNode(tiles.get(i)));
+        }
+        return true;
+    }
+
+    //forward parents lead from the meeting tile back to the start, backward ones on to the end
+    private boolean getPath(IntArray outTiles) {
+        outTiles.clear();
+        if(meetingNode == -1){
+            return false;
+        }
+
+        for (int tile = meetingNode; tile != -1; tile = forward.getParent(tile, searchId)) {
+            outTiles.add(tile);
+        }
+        outTiles.reverse();
+        for (int tile = backward.getParent(meetingNode, searchId); tile != -1; tile = backward.getParent(tile, searchId)) {
+            outTiles.add(tile);
+        }
+        return true;
+    }
+
+    //search state of one direction, indexed by tile
+    private static class Side {
+        final float[] costs;
+        final int[] parents;
+        final int[] openedIn;
+        final int[] closedIn;
+        final NodePriorityQueue openList;
+
+        Side(int size) {
+            costs = new float[size];
+            parents = new int[size];
+            openedIn = new int[size];
+            closedIn = new int[size];
+            openList = new NodePriorityQueue(size);
+        }
+
+        void open(int node, float cost, int parent, float estimate, int searchId) {
+            costs[node] = cost;
+            parents[node] = parent;
+            openedIn[node] = searchId;
+            openList.add(node, estimate);
+        }
+
+        double getMinEstimate() {
+            return openList.getPriority(openList.peek());
+        }
+
+        int getParent(int node, int searchId) {
+            return openedIn[node] == searchId ? parents[node] : -1;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Arrays;
+
+/*
+ * Label of the connected component for every walkable tile, closed tiles have NO_REGION.
+ * Two tiles are connected if and only if they have the same label, so unreachable goals are rejected
+ * without a search which would otherwise visit the whole area around the start before failing.
+ *
+ * Labels are updated incrementally. An opened tile merges the regions around it, the smaller ones get the label
+ * of the biggest. A closed tile may split its region: searches are started from each of its neighbours in turn,
+ * and the ones which run out of tiles without meeting the others are relabeled. So the work is proportional
+ * to the smaller parts, the biggest part of the region is never visited.
+ */
+public class ConnectedRegions implements WalkabilityListener {
+
+    public static final int NO_REGION = 0;
+
+    private final WalkabilityGrid grid;
+    private final int[] labels;
+    private final IntArray sizes = new IntArray(); //by label, zero for labels not used anymore
+    private int regions;
+
+    //split search state, one group per neighbour of the closed tile
+    private final int[] visits; //search stamp + group
+    private int stamp;
+    private final IntArray[] groupTiles = new IntArray[GridTiledGraph.DIRECTIONS];
+    private final int[] groupHeads = new int[GridTiledGraph.DIRECTIONS];
+    private final int[] groupParents = new int[GridTiledGraph.DIRECTIONS];
+    private final boolean[] groupSeparated = new boolean[GridTiledGraph.DIRECTIONS];
+    private final IntArray queue = new IntArray();
+
+    //queries may come from chunks of AISystem at the same time, changes come only from the game thread.
+    //Counters are guarded by the lock rather than atomic, which GWT doesn't emulate (synchronized is ignored there)
+    private final Object countLock = new Object();
+    private int queries;
+    private int rejectedQueries;
+    private int merges;
+    private int splits;
+
+    public ConnectedRegions(WalkabilityGrid grid) {
+        this.grid = grid;
+        labels = new int[grid.getSize()];
+        visits = new int[grid.getSize()];
+        for (int i = 0; i < groupTiles.length; i++) {
+            groupTiles[i] = new IntArray();
+        }
+        build();
+    }
+
+    public void build() {
+        Arrays.fill(labels, NO_REGION);
+        sizes.clear();
+        sizes.add(0); //NO_REGION
+        regions = 0;
+        for (int i = 0; i < labels.length; i++) {
+            if(labels[i] == NO_REGION && grid.isWalkable(i)){
+                int label = newLabel();
+                sizes.set(label, relabel(i, NO_REGION, label));
+            }
+        }
+    }
+
+    public int getLabel(int index) {
+        return labels[index];
+    }
+
+    public int getRegionSize(int label) {
+        return sizes.get(label);
+    }
+
+    public int getRegionCount() {
+        return regions;
+    }
+
+    /*
+     * Both tiles may be closed (an entity standing in a doorway, an object in its tile),
+     * then they are connected through their walkable neighbours.
+     */
+    public boolean isReachable(int from, int to) {
+        boolean reachable = from == to;
+        if(!reachable){
+            if(grid.isWalkable(from)){
+                reachable = isConnected(to, labels[from]);
+            } else {
+                int x = grid.getX(from);
+                int y = grid.getY(from);
+                for (int direction = 0; direction < GridTiledGraph.DIRECTIONS && !reachable; direction++) {
+                    int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+                    int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+                    if(grid.isWalkable(neighbourX, neighbourY)){
+                        reachable = isConnected(to, labels[grid.getIndex(neighbourX, neighbourY)]);
+                    }
+                }
+            }
+        }
+        return count(reachable);
+    }
+
+    //true if any walkable tile of the goal is connected to the start
+    public boolean isReachable(int from, PathGoal goal) {
+        int reach = (int)Math.ceil(goal.range);
+        for (int x = Math.max(0, goal.x - reach); x <= Math.min(grid.getWidth() - 1, goal.x + reach); x++) {
+            for (int y = Math.max(0, goal.y - reach); y <= Math.min(grid.getHeight() - 1, goal.y + reach); y++) {
+                int index = grid.getIndex(x, y);
+                if(goal.isGoal(x, y) && grid.isWalkable(index) && isConnected(from, labels[index])){
+                    return count(true);
+                }
+            }
+        }
+        return count(false);
+    }
+
+    public int getQueries() {
+        synchronized (countLock) {
+            return queries;
+        }
+    }
+
+    //queries answered "unreachable", each of them is a search which hasn't been done
+    public int getRejectedQueries() {
+        synchronized (countLock) {
+            return rejectedQueries;
+        }
+    }
+
+    public int getMerges() {
+        return merges;
+    }
+
+    public int getSplits() {
+        return splits;
+    }
+
+    @Override
+    public void walkabilityChanged(int index, boolean walkable) {
+        if(walkable){
+            open(index);
+        } else {
+            close(index);
+        }
+    }
+
+    private boolean count(boolean reachable) {
+        synchronized (countLock) {
+            queries++;
+            if(!reachable){
+                rejectedQueries++;
+            }
+        }
+        return reachable;
+    }
+
+    //the tile itself or, if it's closed, one of its neighbours has the label
+    private boolean isConnected(int index, int label) {
+        if(grid.isWalkable(index)){
+            return labels[index] == label;
+        }
+        int x = grid.getX(index);
+        int y = grid.getY(index);
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+            int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+            if(grid.isWalkable(neighbourX, neighbourY) && labels[grid.getIndex(neighbourX, neighbourY)] == label){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void open(int index) {
+        int x = grid.getX(index);
+        int y = grid.getY(index);
+
+        //the biggest region around keeps its label
+        int label = NO_REGION;
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+            int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+            if(grid.isWalkable(neighbourX, neighbourY)){
+                int neighbourLabel = labels[grid.getIndex(neighbourX, neighbourY)];
+                if(label == NO_REGION || sizes.get(neighbourLabel) > sizes.get(label)){
+                    label = neighbourLabel;
+                }
+            }
+        }
+
+        if(label == NO_REGION){
+            label = newLabel();
+        }
+        labels[index] = label;
+        sizes.incr(label, 1);
+
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+            int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+            if(grid.isWalkable(neighbourX, neighbourY)){
+                int neighbourLabel = labels[grid.getIndex(neighbourX, neighbourY)];
+                if(neighbourLabel != label){
+                    sizes.incr(label, relabel(grid.getIndex(neighbourX, neighbourY), neighbourLabel, label));
+                    sizes.set(neighbourLabel, 0);
+                    regions--;
+                    merges++;
+                }
+            }
+        }
+    }
+
+    private void close(int index) {
+        int label = labels[index];
+        if(label == NO_REGION){
+            return;
+        }
+        labels[index] = NO_REGION;
+        sizes.incr(label, -1);
+        if(sizes.get(label) == 0){
+            regions--;
+            return;
+        }
+
+        int x = grid.getX(index);
+        int y = grid.getY(index);
+        int groups = 0;
+        if(stamp > Integer.MAX_VALUE - 2 * GridTiledGraph.DIRECTIONS){
+            Arrays.fill(visits, 0);
+            stamp = 0;
+        }
+        stamp += GridTiledGraph.DIRECTIONS;
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+            int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+            if(grid.isWalkable(neighbourX, neighbourY)){
+                int neighbour = grid.getIndex(neighbourX, neighbourY);
+                groupTiles[groups].clear();
+                groupTiles[groups].add(neighbour);
+                groupHeads[groups] = 0;
+                groupParents[groups] = groups;
+                groupSeparated[groups] = false;
+                visits[neighbour] = stamp + groups;
+                groups++;
+            }
+        }
+
+        //groups which meet are joined, a group which has run out of tiles alone is a new region
+        int parts = groups;
+        while (parts > 1){
+            for (int group = 0; group < groups && parts > 1; group++) {
+                if(groupHeads[group] < groupTiles[group].size){
+                    parts -= expand(group, label);
+                }
+            }
+            for (int group = 0; group < groups && parts > 1; group++) {
+                if(!groupSeparated[group] && findGroup(group) == group && isExhausted(group, groups)){
+                    separate(group, groups);
+                    parts--;
+                    splits++;
+                }
+            }
+        }
+    }
+
+    //visits the next tile of the group, returns the number of joined groups
+    private int expand(int group, int label) {
+        int joined = 0;
+        int tile = groupTiles[group].get(groupHeads[group]++);
+        int x = grid.getX(tile);
+        int y = grid.getY(tile);
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+            int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+            if(!grid.isWalkable(neighbourX, neighbourY)){
+                continue;
+            }
+            int neighbour = grid.getIndex(neighbourX, neighbourY);
+            if(labels[neighbour] != label){
+                continue;
+            }
+            if(visits[neighbour] < stamp){
+                visits[neighbour] = stamp + group;
+                groupTiles[group].add(neighbour);
+            } else {
+                int root = findGroup(group);
+                int otherRoot = findGroup(visits[neighbour] - stamp);
+                if(root != otherRoot){
+                    groupParents[otherRoot] = root;
+                    joined++;
+                }
+            }
+        }
+        return joined;
+    }
+
+    private int findGroup(int group) {
+        while (groupParents[group] != group){
+            group = groupParents[group];
+        }
+        return group;
+    }
+
+    private boolean isExhausted(int root, int groups) {
+        for (int group = 0; group < groups; group++) {
+            if(findGroup(group) == root && groupHeads[group] < groupTiles[group].size){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void separate(int root, int groups) {
+        int oldLabel = labels[groupTiles[root].first()];
+        int label = newLabel();
+        for (int group = 0; group < groups; group++) {
+            if(findGroup(group) == root){
+                groupSeparated[group] = true;
+                IntArray tiles = groupTiles[group];
+                for (int i = 0; i < tiles.size; i++) {
+                    labels[tiles.get(i)] = label;
+                }
+                sizes.incr(label, tiles.size);
+                sizes.incr(oldLabel, -tiles.size);
+            }
+        }
+    }
+
+    private int newLabel() {
+        sizes.add(0);
+        regions++;
+        return sizes.size - 1;
+    }
+
+    //breadth-first fill of walkable tiles with the old label, returns the number of filled tiles
+    private int relabel(int start, int oldLabel, int label) {
+        queue.clear();
+        labels[start] = label;
+        queue.add(start);
+        for (int head = 0; head < queue.size; head++) {
+            int tile = queue.get(head);
+            int x = grid.getX(tile);
+            int y = grid.getY(tile);
+            for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+                int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+                int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+                if(grid.isWalkable(neighbourX, neighbourY)){
+                    int neighbour = grid.getIndex(neighbourX, neighbourY);
+                    if(labels[neighbour] == oldLabel){
+                        labels[neighbour] = label;
+                        queue.add(neighbour);
+                    }
+                }
+            }
+        }
+        return queue.size;
+    }
+}
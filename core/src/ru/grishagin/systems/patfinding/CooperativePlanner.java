@@ -0,0 +1,186 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.utils.IntIntMap;
+
+/*
+ * Windowed cooperative A* (WHCA*): agents plan one after another over (tile, time slot) for a few slots ahead,
+ * each one avoiding the tiles reserved by the others, and reserve their own moves.
+ * Every step is a move to a neighbour or a wait, both cost one slot.
+ *
+ * The flow field of the target is the heuristic: it's the exact distance when there are no other agents,
+ * so the search goes straight where nobody is in the way and only looks around near the others.
+ * Beyond the window the agent follows the field as before, so the plan must be renewed while the agent goes.
+ *
+ * The search is cut after maxExpansions, then the plan leads to the closest to the target tile found.
+ * Memory of the planner depends only on that limit, memory of the table on agents * window,
+ * and each agent pays for its own bounded search, so the cost grows linearly with the number of agents.
+ */
+public class CooperativePlanner {
+
+    public static final int DEFAULT_WINDOW = 8;
+    public static final int DEFAULT_MAX_EXPANSIONS = 256;
+
+    private static final int MOVES = GridTiledGraph.DIRECTIONS + 1; //wait is the last one
+
+    private final WalkabilityGrid grid;
+    private final ReservationTable reservations;
+    private final int window;
+    private final int maxExpansions;
+
+    //search state by local node, node of a state is found by step * size + tile
+    private final IntIntMap nodes = new IntIntMap();
+    private final int[] states;
+    private final int[] parents;
+    private final NodePriorityQueue openList;
+    private int nodeCount;
+
+    private int expandedNodes;
+    private int plans;
+    private int cutPlans;
+
+    public CooperativePlanner(WalkabilityGrid grid, ReservationTable reservations) {
+        this(grid, reservations, DEFAULT_MAX_EXPANSIONS);
+    }
+
+    public CooperativePlanner(WalkabilityGrid grid, ReservationTable reservations, int maxExpansions) {
+        this.grid = grid;
+        this.reservations = reservations;
+        this.window = reservations.getWindow();
+        this.maxExpansions = maxExpansions;
+
+        int maxNodes = maxExpansions * MOVES + 1;
+        states = new int[maxNodes];
+        parents = new int[maxNodes];
+        openList = new NodePriorityQueue(maxNodes);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    //nodes expanded by the last plan
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    //plans made since the start and how many of them were cut by the expansion limit
+    public int getPlans() {
+        return plans;
+    }
+
+    public int getCutPlans() {
+        return cutPlans;
+    }
+
+    /*
+     * outTiles gets window + 1 tiles: where the agent is in the current time slot and in each of the next ones.
+     * They are reserved for the agent. Returns false if the plan doesn't bring the agent closer to the target.
+     * Agents which stop in range of the target don't enter its tile.
+     */
+    public boolean plan(int agent, int start, FlowField field, boolean enterTarget, int[] outTiles) {
+        plans++;
+        int time = reservations.getTime();
+        int size = grid.getSize();
+        clear();
+
+        int startDistance = field.getDistance(start);
+        int best = open(start, 0, -1, startDistance);
+        int bestDistance = startDistance;
+        int bestStep = 0;
+        while (!openList.isEmpty()){
+            if(expandedNodes == maxExpansions){
+                cutPlans++;
+                break;
+            }
+            int node = openList.poll();
+            int step = states[node] / size;
+            int tile = states[node] % size;
+            int distance = field.getDistance(tile);
+            if(distance < bestDistance || distance == bestDistance && step > bestStep){
+                best = node;
+                bestDistance = distance;
+                bestStep = step;
+            }
+            if(step == window || distance == 0){
+                break;
+            }
+
+            expandedNodes++;
+            int x = grid.getX(tile);
+            int y = grid.getY(tile);
+            for (int move = 0; move < MOVES; move++) {
+                int next = tile;
+                if(move < GridTiledGraph.DIRECTIONS){
+                    int nextX = x + GridTiledGraph.X_OFFSETS[move];
+                    int nextY = y + GridTiledGraph.Y_OFFSETS[move];
+                    if(!grid.isWalkable(nextX, nextY)){
+                        continue;
+                    }
+                    next = grid.getIndex(nextX, nextY);
+                }
+                int nextDistance = field.getDistance(next);
+                if(nextDistance == FlowField.UNREACHABLE || nextDistance == 0 && !enterTarget || nodes.containsKey((step + 1) * size + next)
+                        || !reservations.canMove(agent, tile, next, time + step + 1)){
+                    continue; //all states of one step have the same cost, so the first visit is the best
+                }
+                if(nodeCount == states.length){
+                    break;
+                }
+                open(next, step + 1, node, nextDistance);
+            }
+        }
+
+        //the agent stays at the last tile of the path found to the end of the window
+        for (int node = best; node != -1; node = parents[node]) {
+            outTiles[states[node] / size] = states[node] % size;
+        }
+        for (int step = bestStep + 1; step <= window; step++) {
+            outTiles[step] = outTiles[bestStep];
+        }
+        reserve(agent, outTiles, bestStep);
+        return bestDistance < startDistance;
+    }
+
+    //agent stands still, e.g. waits near its target. outTiles are filled as by plan()
+    public void hold(int agent, int tile, int[] outTiles) {
+        for (int step = 0; step <= window; step++) {
+            outTiles[step] = tile;
+        }
+        reserve(agent, outTiles, 0);
+    }
+
+    //reservations of the plan made at the time, the ones which have already expired are skipped
+    public void release(int agent, int[] tiles, int time) {
+        for (int step = 0; step <= window; step++) {
+            reservations.release(tiles[step], time + step, agent);
+        }
+    }
+
+    //the moves are checked by the search. The start and waiting at the end of the plan are not,
+    //they are reserved only where nobody else is, so agents standing in the way don't lose their tiles
+    private void reserve(int agent, int[] tiles, int plannedSteps) {
+        int time = reservations.getTime();
+        for (int step = 0; step <= window; step++) {
+            if(step > 0 && step <= plannedSteps || reservations.getAgent(tiles[step], time + step) == ReservationTable.NO_AGENT){
+                reservations.reserve(tiles[step], time + step, agent);
+            }
+        }
+    }
+
+    //deeper states go first among the ones with the same estimate
+    private int open(int tile, int step, int parent, int distance) {
+        int node = nodeCount++;
+        states[node] = step * grid.getSize() + tile;
+        parents[node] = parent;
+        nodes.put(states[node], node);
+        openList.add(node, ((double)step + distance) * (window + 1) + window - step);
+        return node;
+    }
+
+    private void clear() {
+        openList.clear();
+        nodes.clear();
+        nodeCount = 0;
+        expandedNodes = 0;
+    }
+}
@@ -0,0 +1,291 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Arrays;
+
+/*
+ * D* Lite over walkability grid, see http://idm-lab.org/bib/abstracts/papers/aaai02b.pdf
+ * Search goes from the goal to the start, so when the start moves along the path and tiles change,
+ * the previous search is repaired instead of being done again: only tiles whose distance to the goal
+ * depends on the changed ones are expanded.
+ *
+ * The search is limited to a window of the grid given to init(), tiles outside of it are treated as walls,
+ * so memory and work depend on the window and not on the map. Arrays grow to the largest window seen.
+ * Movement rules are the ones of GridTiledGraph: 4-connected, or 8-connected without cutting corners.
+ * Costs are integers to keep the keys exact, a diagonal step costs 99 / 70, close enough to sqrt(2).
+ *
+ * One instance keeps the state of one route. Instances are meant to be reused by init() for another route.
+ */
+public class DStarLite {
+
+    public static final int ORTHOGONAL_COST = 70;
+    public static final int DIAGONAL_COST = 99;
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+    private static final double KEY_SCALE = 1 << 26; //keys are compared as (first, second) pairs packed into a double
+
+    private final WalkabilityGrid grid;
+    private final boolean diagonal;
+    //by node, a node is a tile of the window
+    private int[] g = new int[0];
+    private int[] rhs = new int[0];
+    private NodePriorityQueue openList = new NodePriorityQueue(0);
+
+    private int fromX;
+    private int fromY;
+    private int windowWidth;
+    private int windowHeight;
+
+    private int start = -1; //nodes
+    private int goal = -1;
+    private int lastStart;
+    private int keyModifier;
+
+    //filled by findNeighbours()
+    private final int[] neighbours = new int[GridTiledGraph.DIRECTIONS * 2];
+    private final int[] neighbourCosts = new int[GridTiledGraph.DIRECTIONS * 2];
+
+    private int expandedNodes;
+
+    public DStarLite(WalkabilityGrid grid, boolean diagonal) {
+        this.grid = grid;
+        this.diagonal = diagonal;
+    }
+
+    public boolean isDiagonal() {
+        return diagonal;
+    }
+
+    //grid index of the start tile, -1 before init()
+    public int getStart() {
+        return start == -1 ? -1 : getIndex(start);
+    }
+
+    public int getGoal() {
+        return goal == -1 ? -1 : getIndex(goal);
+    }
+
+    //nodes expanded since the last init(), plan() calls after changes add to it
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    //true if the tile is in the window of the current search
+    public boolean contains(int index) {
+        int x = grid.getX(index) - fromX;
+        int y = grid.getY(index) - fromY;
+        return x >= 0 && y >= 0 && x < windowWidth && y < windowHeight;
+    }
+
+    //window bounds are included and clamped to the grid, start and goal must be inside of it
+    public void init(int start, int goal, int fromX, int fromY, int toX, int toY) {
+        this.fromX = Math.max(fromX, 0);
+        this.fromY = Math.max(fromY, 0);
+        windowWidth = Math.min(toX, grid.getWidth() - 1) - this.fromX + 1;
+        windowHeight = Math.min(toY, grid.getHeight() - 1) - this.fromY + 1;
+        int size = windowWidth * windowHeight;
+        if(size > g.length){
+            g = new int[size];
+            rhs = new int[size];
+            openList = new NodePriorityQueue(size);
+        }
+
+        this.start = getNode(start);
+        this.goal = getNode(goal);
+        lastStart = this.start;
+        keyModifier = 0;
+        expandedNodes = 0;
+
+        Arrays.fill(g, 0, size, INFINITY);
+        Arrays.fill(rhs, 0, size, INFINITY);
+        openList.clear();
+        rhs[this.goal] = 0;
+        openList.add(this.goal, calculateKey(this.goal));
+    }
+
+    //window is the whole grid
+    public void init(int start, int goal) {
+        init(start, goal, 0, 0, grid.getWidth() - 1, grid.getHeight() - 1);
+    }
+
+    //entity has moved, it's cheap and doesn't need replanning by itself. The tile must be in the window
+    public void moveStart(int start) {
+        int node = getNode(start);
+        if(this.start == node){
+            return;
+        }
+        this.start = node;
+        keyModifier += estimate(lastStart, node);
+        lastStart = node;
+    }
+
+    //walkability of the tile has changed, so did the cost of moving into it and, with diagonals, past it
+    public void tileChanged(int index) {
+        if(!contains(index)){
+            return;
+        }
+        int x = grid.getX(index) - fromX;
+        int y = grid.getY(index) - fromY;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if(dx != 0 || dy != 0){
+                    updateVertex(x + dx, y + dy);
+                }
+            }
+        }
+    }
+
+    //returns true if the goal is reachable from the start
+    public boolean plan() {
+        while (!openList.isEmpty() && (openList.getPriority(openList.peek()) < calculateKey(start) || rhs[start] != g[start])){
+            int node = openList.peek();
+            double oldKey = openList.getPriority(node);
+            double newKey = calculateKey(node);
+            if(oldKey < newKey){
+                openList.add(node, newKey);
+            } else if(g[node] > rhs[node]){
+                g[node] = rhs[node];
+                openList.remove(node);
+                updatePredecessors(node);
+                expandedNodes++;
+            } else {
+                g[node] = INFINITY;
+                updateVertex(node);
+                updatePredecessors(node);
+                expandedNodes++;
+            }
+        }
+        return g[start] < INFINITY;
+    }
+
+    //outPath is filled with grid indexes of all tiles from the start to the goal inclusive. plan() must be called before
+    public boolean getPath(IntArray outPath) {
+        outPath.clear();
+        if(g[start] >= INFINITY){
+            return false;
+        }
+
+        int node = start;
+        outPath.add(getIndex(node));
+        while (node != goal){
+            int next = -1;
+            int nextCost = INFINITY;
+            int count = findNeighbours(node);
+            for (int i = 0; i < count; i++) {
+                int cost = g[neighbours[i]] + neighbourCosts[i];
+                if(cost < nextCost){
+                    next = neighbours[i];
+                    nextCost = cost;
+                }
+            }
+            if(next == -1 || g[next] >= g[node] || outPath.size > g.length){
+                outPath.clear();
+                return false;
+            }
+            node = next;
+            outPath.add(getIndex(node));
+        }
+        return true;
+    }
+
+    //distances of the tiles around may go through the node. updateVertex() refills the neighbours, so they are not used here
+    private void updatePredecessors(int node) {
+        int x = node / windowHeight;
+        int y = node % windowHeight;
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            updateVertex(x + GridTiledGraph.X_OFFSETS[direction], y + GridTiledGraph.Y_OFFSETS[direction]);
+            if(diagonal){
+                updateVertex(x + GridTiledGraph.DIAGONAL_X_OFFSETS[direction], y + GridTiledGraph.DIAGONAL_Y_OFFSETS[direction]);
+            }
+        }
+    }
+
+    private void updateVertex(int x, int y) {
+        if(isInWindow(x, y)){
+            updateVertex(x * windowHeight + y);
+        }
+    }
+
+    //one-step lookahead: the best distance through walkable neighbours
+    private void updateVertex(int node) {
+        if(node != goal){
+            int best = INFINITY;
+            int count = findNeighbours(node);
+            for (int i = 0; i < count; i++) {
+                best = Math.min(best, g[neighbours[i]] + neighbourCosts[i]);
+            }
+            rhs[node] = Math.min(best, INFINITY);
+        }
+
+        if(g[node] != rhs[node]){
+            openList.add(node, calculateKey(node));
+        } else {
+            openList.remove(node);
+        }
+    }
+
+    //walkable neighbours of the node in the window by the rules of GridTiledGraph. Returns their number
+    private int findNeighbours(int node) {
+        int x = node / windowHeight;
+        int y = node % windowHeight;
+        int count = 0;
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+            int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+            if(isWalkable(neighbourX, neighbourY)){
+                neighbours[count] = neighbourX * windowHeight + neighbourY;
+                neighbourCosts[count++] = ORTHOGONAL_COST;
+            }
+        }
+        if(diagonal){
+            for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+                int neighbourX = x + GridTiledGraph.DIAGONAL_X_OFFSETS[direction];
+                int neighbourY = y + GridTiledGraph.DIAGONAL_Y_OFFSETS[direction];
+                int next = (direction + 1) % GridTiledGraph.DIRECTIONS;
+                if(isWalkable(neighbourX, neighbourY)
+                        && isWalkable(x + GridTiledGraph.X_OFFSETS[direction], y + GridTiledGraph.Y_OFFSETS[direction])
+                        && isWalkable(x + GridTiledGraph.X_OFFSETS[next], y + GridTiledGraph.Y_OFFSETS[next])){
+                    neighbours[count] = neighbourX * windowHeight + neighbourY;
+                    neighbourCosts[count++] = DIAGONAL_COST;
+                }
+            }
+        }
+        return count;
+    }
+
+    //window coordinates
+    private boolean isInWindow(int x, int y) {
+        return x >= 0 && y >= 0 && x < windowWidth && y < windowHeight;
+    }
+
+    private boolean isWalkable(int x, int y) {
+        return isInWindow(x, y) && grid.isWalkable(fromX + x, fromY + y);
+    }
+
+    private int getNode(int index) {
+        return (grid.getX(index) - fromX) * windowHeight + grid.getY(index) - fromY;
+    }
+
+    private int getIndex(int node) {
+        return grid.getIndex(fromX + node / windowHeight, fromY + node % windowHeight);
+    }
+
+    private double calculateKey(int node) {
+        int distance = Math.min(g[node], rhs[node]);
+        if(distance >= INFINITY){
+            return Double.MAX_VALUE;
+        }
+        return (distance + estimate(start, node) + keyModifier) * KEY_SCALE + distance;
+    }
+
+    //manhattan or octile distance in the step costs, never more than the real one
+    private int estimate(int from, int to) {
+        int dx = Math.abs(from / windowHeight - to / windowHeight);
+        int dy = Math.abs(from % windowHeight - to % windowHeight);
+        if(!diagonal){
+            return (dx + dy) * ORTHOGONAL_COST;
+        }
+        return Math.min(dx, dy) * DIAGONAL_COST + Math.abs(dx - dy) * ORTHOGONAL_COST;
+    }
+}
@@ -4,7 +4,8 @@ import com.badlogic.gdx.ai.pfa.DefaultConnection;
 
 public class FlatTiledConnection extends DefaultConnection<FlatTiledNode> {
 
-    static final float NON_DIAGONAL_COST = (float)Math.sqrt(2);
+    static final float ORTHOGONAL_COST = 1;
+    static final float DIAGONAL_COST = (float)Math.sqrt(2);
 
     FlatTiledGraph worldMap;
 
@@ -14,11 +15,9 @@ public class FlatTiledConnection extends DefaultConnection<FlatTiledNode> {
     }
 
 
-    //I have no idea what's going on here)
+    //one per orthogonal step, so manhattan distance is exact on an empty map
     @Override
     public float getCost () {
-        //if (worldMap.diagonal) return 1;
-        //return getToNode().x != worldMap.getStartNode().x && getToNode().y != worldMap.getStartNode().y ? NON_DIAGONAL_COST : 1;
-        return NON_DIAGONAL_COST;
+        return getToNode().x != getFromNode().x && getToNode().y != getFromNode().y ? DIAGONAL_COST : ORTHOGONAL_COST;
     }
 }
@@ -35,6 +35,7 @@ public class FlatTiledGraph implements TiledGraph<FlatTiledNode> {
         width = layer.getWidth();
         height = layer.getHeight();
         nodes = new Array<FlatTiledNode>(height*width);
+        WalkabilityGrid walkability = TiledMapHelper.rasterizeWalkability(map);
 
         //create nodes without connections
         for (int x = 0; x < width; x++) {
@@ -42,7 +43,7 @@ public class FlatTiledGraph implements TiledGraph<FlatTiledNode> {
             for (int y = 0; y < height; y++) {
                 //resolve types, can be other types in future
                 TileNodeType nodeType;
-                if(TiledMapHelper.isWalkable(map, x, y)){
+                if(walkability.isWalkable(idx + y)){
                     nodeType = TileNodeType.NORMAL;
                 } else {
                     nodeType = TileNodeType.IMPASSABLE;
@@ -0,0 +1,247 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Arrays;
+
+/*
+ * Integration field (Dijkstra map): number of steps from every tile to the target tile.
+ * Any number of agents can go to the target, each step is just a look at 4 neighbours of the current tile.
+ *
+ * Field is updated incrementally. When a tile is closed or the target leaves a tile, only tiles whose distance
+ * depended on it are invalidated and filled again from their neighbours; when a tile is opened or becomes
+ * the target, lowered distances are propagated from it. So only tiles with really changed distance are touched.
+ */
+public class FlowField implements WalkabilityListener {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final WalkabilityGrid grid;
+    private final int[] distances;
+    private int target = -1;
+
+    private final NodePriorityQueue queue;
+    private final boolean[] affected;
+    private final IntArray affectedTiles = new IntArray();
+
+    private int updatedTiles; //by the last change, for statistics
+
+    public FlowField(WalkabilityGrid grid) {
+        this.grid = grid;
+        distances = new int[grid.getSize()];
+        affected = new boolean[grid.getSize()];
+        queue = new NodePriorityQueue(grid.getSize());
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public int getDistance(int index) {
+        return distances[index];
+    }
+
+    //tiles whose distance was recomputed by the last change of the target or walkability
+    public int getUpdatedTiles() {
+        return updatedTiles;
+    }
+
+    public void setTarget(int target) {
+        if(this.target == target){
+            return;
+        }
+
+        updatedTiles = 0;
+        if(this.target == -1){
+            build(target);
+            return;
+        }
+
+        int previous = this.target;
+        this.target = target;
+        //the new target lowers distances around it, then tiles which led only to the old one are fixed
+        lower(target, 0);
+        raise(previous);
+    }
+
+    //full rebuild by breadth-first search
+    public void build(int target) {
+        this.target = target;
+        Arrays.fill(distances, UNREACHABLE);
+        queue.clear();
+        distances[target] = 0;
+        queue.add(target, 0);
+        propagate();
+        updatedTiles = grid.getSize();
+    }
+
+    //neighbour one step closer to the target, -1 if the tile is the target itself or the target is unreachable
+    public int getNextTile(int index) {
+        int distance = distances[index];
+        if(distance == 0 || distance == UNREACHABLE){
+            return -1;
+        }
+
+        int x = grid.getX(index);
+        int y = grid.getY(index);
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+            int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+            if(grid.isInside(neighbourX, neighbourY)){
+                int neighbour = grid.getIndex(neighbourX, neighbourY);
+                if(distances[neighbour] == distance - 1){
+                    return neighbour;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void walkabilityChanged(int index, boolean walkable) {
+        if(target == -1 || index == target){
+            return; //target is a source regardless of its walkability
+        }
+
+        updatedTiles = 0;
+        if(walkable){
+            lower(index, getNeighbourDistance(index));
+        } else {
+            raise(index);
+        }
+    }
+
+    //the tile has got a lower distance, spread it
+    private void lower(int index, int distance) {
+        if(distance >= distances[index]){
+            return;
+        }
+        queue.clear();
+        distances[index] = distance;
+        queue.add(index, distance);
+        updatedTiles++;
+        propagate();
+    }
+
+    /*
+     * The tile doesn't give its distance anymore (closed or not the target).
+     * Tiles which have no other neighbour one step closer are invalidated, going away layer by layer.
+     * Then they get distances from valid neighbours and these distances are spread among them.
+     */
+    private void raise(int index) {
+        if(distances[index] == UNREACHABLE){
+            return;
+        }
+        queue.clear();
+        affectedTiles.clear();
+        markAffected(index);
+        queue.add(index, distances[index]);
+
+        while (!queue.isEmpty()){
+            int tile = queue.poll();
+            int distance = distances[tile];
+            int x = grid.getX(tile);
+            int y = grid.getY(tile);
+            for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+                int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+                int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+                if(!grid.isWalkable(neighbourX, neighbourY)){
+                    continue;
+                }
+                int neighbour = grid.getIndex(neighbourX, neighbourY);
+                if(!affected[neighbour] && neighbour != target && distances[neighbour] == distance + 1 && !isSupported(neighbour)){
+                    markAffected(neighbour);
+                    queue.add(neighbour, distances[neighbour]);
+                }
+            }
+        }
+
+        for (int i = 0; i < affectedTiles.size; i++) {
+            distances[affectedTiles.get(i)] = UNREACHABLE;
+        }
+        for (int i = 0; i < affectedTiles.size; i++) {
+            int tile = affectedTiles.get(i);
+            affected[tile] = false;
+            if(grid.isWalkable(tile)){
+                int distance = getNeighbourDistance(tile);
+                if(distance != UNREACHABLE){
+                    distances[tile] = distance;
+                    queue.add(tile, distance);
+                }
+            }
+        }
+        updatedTiles += affectedTiles.size;
+        propagate();
+    }
+
+    private void markAffected(int index) {
+        affected[index] = true;
+        affectedTiles.add(index);
+    }
+
+    //has a neighbour one step closer to the target which is not invalidated
+    private boolean isSupported(int index) {
+        int distance = distances[index];
+        int x = grid.getX(index);
+        int y = grid.getY(index);
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+            int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+            if(grid.isInside(neighbourX, neighbourY)){
+                int neighbour = grid.getIndex(neighbourX, neighbourY);
+                if(!affected[neighbour] && distances[neighbour] == distance - 1 && isSource(neighbour)){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    //distances are spread only through walkable tiles and the target
+    private boolean isSource(int index) {
+        return index == target || grid.isWalkable(index);
+    }
+
+    //one more than the smallest distance of the neighbours
+    private int getNeighbourDistance(int index) {
+        int best = UNREACHABLE;
+        int x = grid.getX(index);
+        int y = grid.getY(index);
+        for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+            int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+            int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+            if(grid.isInside(neighbourX, neighbourY)){
+                int neighbour = grid.getIndex(neighbourX, neighbourY);
+                if(distances[neighbour] < best && isSource(neighbour)){
+                    best = distances[neighbour];
+                }
+            }
+        }
+        return best == UNREACHABLE ? UNREACHABLE : best + 1;
+    }
+
+    //lowers distances of the neighbours of the queued tiles while possible
+    private void propagate() {
+        while (!queue.isEmpty()){
+            int tile = queue.poll();
+            if(tile != target && !grid.isWalkable(tile)){
+                continue; //closed tiles keep their own distance but don't lead anywhere
+            }
+            int distance = distances[tile] + 1;
+            int x = grid.getX(tile);
+            int y = grid.getY(tile);
+            for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+                int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+                int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+                if(grid.isWalkable(neighbourX, neighbourY)){
+                    int neighbour = grid.getIndex(neighbourX, neighbourY);
+                    if(distance < distances[neighbour]){
+                        distances[neighbour] = distance;
+                        queue.add(neighbour, distance);
+                        updatedTiles++;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/*
+ * A* over walkability grid with unit step cost which ends at any tile of the goal set.
+ * Closest reachable goal tile is found in one pass, so there is no need to make an occupied tile
+ * passable and search twice.
+ */
+public class GridAStar {
+
+    private final WalkabilityGrid grid;
+
+    private final int[] costs;
+    private final int[] parents;
+    private final int[] openedIn;
+    private final int[] closedIn;
+    private final NodePriorityQueue openList;
+    private int searchId;
+
+    private int expandedNodes;
+
+    public GridAStar(WalkabilityGrid grid) {
+        this.grid = grid;
+
+        int size = grid.getSize();
+        costs = new int[size];
+        parents = new int[size];
+        openedIn = new int[size];
+        closedIn = new int[size];
+        openList = new NodePriorityQueue(size);
+    }
+
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    //outPath is filled with indexes of all tiles from start to the found goal tile inclusive
+    public boolean search(int start, PathGoal goal, IntArray outPath) {
+        outPath.clear();
+        openList.clear();
+        expandedNodes = 0;
+        searchId++;
+
+        costs[start] = 0;
+        parents[start] = -1;
+        openedIn[start] = searchId;
+        openList.add(start, goal.estimate(grid.getX(start), grid.getY(start)));
+
+        while (!openList.isEmpty()){
+            int node = openList.poll();
+            closedIn[node] = searchId;
+
+            int x = grid.getX(node);
+            int y = grid.getY(node);
+            if(goal.isGoal(x, y)){
+                for (int tile = node; tile != -1; tile = parents[tile]) {
+                    outPath.add(tile);
+                }
+                outPath.reverse();
+                return true;
+            }
+
+            expandedNodes++;
+            int cost = costs[node] + 1;
+            for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+                int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+                int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+                if(!grid.isWalkable(neighbourX, neighbourY)){
+                    continue;
+                }
+                int neighbour = grid.getIndex(neighbourX, neighbourY);
+                if(closedIn[neighbour] == searchId){
+                    continue;
+                }
+                if(openedIn[neighbour] != searchId || cost < costs[neighbour]){
+                    openedIn[neighbour] = searchId;
+                    costs[neighbour] = cost;
+                    parents[neighbour] = node;
+                    openList.add(neighbour, cost + goal.estimate(neighbourX, neighbourY));
+                }
+            }
+        }
+
+        return false;
+    }
+}
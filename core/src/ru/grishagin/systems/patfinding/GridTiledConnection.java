@@ -0,0 +1,20 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.DefaultConnection;
+
+//connection between two neighbour tiles. It doesn't depend on walkability, so once created it is never rebuilt
+public class GridTiledConnection extends DefaultConnection<GridTiledNode> {
+
+    private final float cost;
+
+    public GridTiledConnection(GridTiledNode fromNode, GridTiledNode toNode) {
+        super(fromNode, toNode);
+        cost = fromNode.x != toNode.x && fromNode.y != toNode.y ? FlatTiledConnection.DIAGONAL_COST : FlatTiledConnection.ORTHOGONAL_COST;
+    }
+
+    //same costs as in FlatTiledConnection
+    @Override
+    public float getCost() {
+        return cost;
+    }
+}
@@ -0,0 +1,174 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import ru.grishagin.model.map.TiledBasedMap;
+import ru.grishagin.model.map.TiledMapHelper;
+
+/*
+ * Compact replacement of FlatTiledGraph.
+ * Walkability is kept in bits, neighbours are computed from the tile index on request.
+ * Nodes and connections are created lazily on first access and live as long as the graph,
+ * so changing a node type is just a bit flip.
+ *
+ * Movement is 4-connected by default. With diagonals enabled a diagonal step is allowed only if both
+ * orthogonal tiles next to it are walkable, so paths never cut corners of walls and never squeeze between
+ * two tiles touching by a corner. Connected areas are the same in both modes then.
+ */
+public class GridTiledGraph implements TiledGraph<GridTiledNode> {
+
+    //left, down, right, up. The same order as in FlatTiledGraph
+    static final int[] X_OFFSETS = {-1, 0, 1, 0};
+    static final int[] Y_OFFSETS = {0, -1, 0, 1};
+    static final int DIRECTIONS = X_OFFSETS.length;
+    //left-down, right-down, right-up, left-up. Orthogonal neighbours of diagonal i are directions i and (i + 1) % 4
+    static final int[] DIAGONAL_X_OFFSETS = {-1, 1, 1, -1};
+    static final int[] DIAGONAL_Y_OFFSETS = {-1, -1, 1, 1};
+
+    private boolean diagonal;
+
+    private WalkabilityGrid walkability;
+
+    private GridTiledNode[] nodes;
+    private GridTiledConnection[] connections; //index * DIRECTIONS + direction
+
+    private final Array<WalkabilityListener> listeners = new Array<WalkabilityListener>();
+
+    //returned from getConnections(). IndexedAStarPathFinder reads it before the next call, so one instance is enough
+    private final Array<Connection<GridTiledNode>> neighbours = new Array<Connection<GridTiledNode>>(DIRECTIONS * 2);
+
+    public GridTiledGraph() {
+        this(false);
+    }
+
+    public GridTiledGraph(boolean diagonal) {
+        this.diagonal = diagonal;
+    }
+
+    @Override
+    public void init(TiledBasedMap map) {
+        init(TiledMapHelper.rasterizeWalkability(map));
+    }
+
+    public void init(WalkabilityGrid walkability) {
+        this.walkability = walkability;
+        nodes = new GridTiledNode[walkability.getSize()];
+        connections = new GridTiledConnection[walkability.getSize() * DIRECTIONS * 2];
+    }
+
+    public boolean isDiagonal() {
+        return diagonal;
+    }
+
+    //path finders working over the graph see the change on their next expansion
+    public void setDiagonal(boolean diagonal) {
+        this.diagonal = diagonal;
+    }
+
+    public WalkabilityGrid getWalkability() {
+        return walkability;
+    }
+
+    @Override
+    public GridTiledNode getNode(int x, int y) {
+        return getNode(walkability.getIndex(x, y));
+    }
+
+    @Override
+    public GridTiledNode getNode(int index) {
+        GridTiledNode node = nodes[index];
+        if(node == null){
+            node = new GridTiledNode(this, walkability.getX(index), walkability.getY(index), index);
+            nodes[index] = node;
+        }
+        return node;
+    }
+
+    @Override
+    public int getIndex(GridTiledNode node) {
+        return node.getIndex();
+    }
+
+    @Override
+    public int getNodeCount() {
+        return walkability.getSize();
+    }
+
+    //Note that the same array instance is returned each time this method is called
+    @Override
+    public Array<Connection<GridTiledNode>> getConnections(GridTiledNode fromNode) {
+        neighbours.clear();
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            int x = fromNode.x + X_OFFSETS[direction];
+            int y = fromNode.y + Y_OFFSETS[direction];
+            if(walkability.isWalkable(x, y)){
+                neighbours.add(getConnection(fromNode, direction, walkability.getIndex(x, y)));
+            }
+        }
+        if(diagonal){
+            for (int direction = 0; direction < DIRECTIONS; direction++) {
+                int x = fromNode.x + DIAGONAL_X_OFFSETS[direction];
+                int y = fromNode.y + DIAGONAL_Y_OFFSETS[direction];
+                if(walkability.isWalkable(x, y)
+                        && walkability.isWalkable(fromNode.x + X_OFFSETS[direction], fromNode.y + Y_OFFSETS[direction])
+                        && walkability.isWalkable(fromNode.x + X_OFFSETS[(direction + 1) % DIRECTIONS], fromNode.y + Y_OFFSETS[(direction + 1) % DIRECTIONS])){
+                    neighbours.add(getConnection(fromNode, DIRECTIONS + direction, walkability.getIndex(x, y)));
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    //connection between neighbour tiles, a diagonal one too even if the graph is 4-connected. Null for other tiles
+    public Connection<GridTiledNode> getConnection(GridTiledNode fromNode, GridTiledNode toNode) {
+        int dx = toNode.x - fromNode.x;
+        int dy = toNode.y - fromNode.y;
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            if(X_OFFSETS[direction] == dx && Y_OFFSETS[direction] == dy){
+                return getConnection(fromNode, direction, toNode.getIndex());
+            }
+            if(DIAGONAL_X_OFFSETS[direction] == dx && DIAGONAL_Y_OFFSETS[direction] == dy){
+                return getConnection(fromNode, DIRECTIONS + direction, toNode.getIndex());
+            }
+        }
+        return null;
+    }
+
+    //connections between consecutive tiles of the path, which must be neighbours
+    public void addConnections(IntArray tiles, GraphPath<Connection<GridTiledNode>> outPath) {
+        for (int i = 1; i < tiles.size; i++) {
+            outPath.add(getConnection(getNode(tiles.get(i - 1)), getNode(tiles.get(i))));
+        }
+    }
+
+    //orthogonal directions go first, then diagonal ones
+    private GridTiledConnection getConnection(GridTiledNode fromNode, int direction, int toIndex){
+        int connectionIndex = fromNode.getIndex() * DIRECTIONS * 2 + direction;
+        GridTiledConnection connection = connections[connectionIndex];
+        if(connection == null){
+            connection = new GridTiledConnection(fromNode, getNode(toIndex));
+            connections[connectionIndex] = connection;
+        }
+        return connection;
+    }
+
+    @Override
+    public void changeNodeType(int index, TileNodeType type) {
+        boolean walkable = type == TileNodeType.NORMAL;
+        if(walkability.setWalkable(index, walkable)){
+            for (WalkabilityListener listener : listeners) {
+                listener.walkabilityChanged(index, walkable);
+            }
+        }
+    }
+
+    public void addListener(WalkabilityListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(WalkabilityListener listener) {
+        listeners.removeValue(listener, true);
+    }
+}
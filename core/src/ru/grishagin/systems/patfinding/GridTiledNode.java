@@ -0,0 +1,33 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.utils.Array;
+
+//node without own connections and type. Both are taken from the graph's walkability bits
+public class GridTiledNode extends TiledNode<GridTiledNode> {
+
+    private final GridTiledGraph graph;
+    private final int index;
+
+    GridTiledNode(GridTiledGraph graph, int x, int y, int index) {
+        super(x, y, TileNodeType.NORMAL, null);
+        this.graph = graph;
+        this.index = index;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public TileNodeType getType() {
+        return graph.getWalkability().isWalkable(index) ? TileNodeType.NORMAL : TileNodeType.IMPASSABLE;
+    }
+
+    //the same array instance is returned for every node, see GridTiledGraph.getConnections()
+    @Override
+    public Array<Connection<GridTiledNode>> getConnections() {
+        return graph.getConnections(this);
+    }
+}
@@ -0,0 +1,348 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+
+/*
+ * Abstract graph for HPA*, see https://webdocs.cs.ualberta.ca/~mmueller/ps/hpastar.pdf
+ * The grid is split into square clusters. Walkable runs along the border of two clusters are entrances,
+ * one or two transitions are placed in each of them. Tiles of the transitions are abstract nodes,
+ * nodes of the same cluster are connected by edges with precomputed in-cluster distance.
+ *
+ * When a tile changes, only its cluster is repaired: in-cluster distances are recomputed
+ * and, if the tile lies on the cluster border, transitions of that border (and distances of the neighbour cluster).
+ */
+public class HierarchicalGraph implements WalkabilityListener {
+
+    //entrances which are not shorter get two transitions at their ends instead of one in the middle
+    private static final int WIDE_ENTRANCE = 6;
+
+    private final WalkabilityGrid grid;
+    private final int clusterSize;
+    private final int clustersX;
+    private final int clustersY;
+
+    private final IntMap<AbstractNode> nodes = new IntMap<AbstractNode>(); //by tile index
+    private final Array<Array<AbstractNode>> clusterNodes;
+    //pairs of tiles, the first one is in the left (bottom) cluster. Indexed by cluster on the left (bottom) side
+    private final IntArray[] verticalBorders;
+    private final IntArray[] horizontalBorders;
+
+    //in-cluster breadth-first search
+    private final int[] distances;
+    private final int[] parents;
+    private final int[] reachedIn;
+    private final int[] queue;
+    private int searchId;
+
+    private int repairs;
+
+    public HierarchicalGraph(WalkabilityGrid grid, int clusterSize) {
+        this.grid = grid;
+        this.clusterSize = clusterSize;
+        clustersX = (grid.getWidth() + clusterSize - 1) / clusterSize;
+        clustersY = (grid.getHeight() + clusterSize - 1) / clusterSize;
+
+        int clusterCount = clustersX * clustersY;
+        clusterNodes = new Array<Array<AbstractNode>>(clusterCount);
+        verticalBorders = new IntArray[clusterCount];
+        horizontalBorders = new IntArray[clusterCount];
+        for (int i = 0; i < clusterCount; i++) {
+            clusterNodes.add(new Array<AbstractNode>(false, 8));
+            verticalBorders[i] = new IntArray();
+            horizontalBorders[i] = new IntArray();
+        }
+
+        distances = new int[grid.getSize()];
+        parents = new int[grid.getSize()];
+        reachedIn = new int[grid.getSize()];
+        queue = new int[clusterSize * clusterSize];
+
+        for (int cx = 0; cx < clustersX; cx++) {
+            for (int cy = 0; cy < clustersY; cy++) {
+                rebuildVerticalBorder(cx, cy);
+                rebuildHorizontalBorder(cx, cy);
+            }
+        }
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            rebuildEdges(cluster);
+        }
+    }
+
+    public WalkabilityGrid getGrid() {
+        return grid;
+    }
+
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    public int getNodeCount() {
+        return nodes.size;
+    }
+
+    //how many times clusters were repaired since creation
+    public int getRepairs() {
+        return repairs;
+    }
+
+    public int getCluster(int index) {
+        return getCluster(grid.getX(index) / clusterSize, grid.getY(index) / clusterSize);
+    }
+
+    private int getCluster(int cx, int cy) {
+        return cx * clustersY + cy;
+    }
+
+    AbstractNode getNode(int index) {
+        return nodes.get(index);
+    }
+
+    Array<AbstractNode> getClusterNodes(int cluster) {
+        return clusterNodes.get(cluster);
+    }
+
+    @Override
+    public void walkabilityChanged(int index, boolean walkable) {
+        int x = grid.getX(index);
+        int y = grid.getY(index);
+        int cx = x / clusterSize;
+        int cy = y / clusterSize;
+        int localX = x % clusterSize;
+        int localY = y % clusterSize;
+
+        if(localX == 0 && cx > 0){
+            rebuildVerticalBorder(cx - 1, cy);
+            rebuildEdges(getCluster(cx - 1, cy));
+        }
+        if(localX == clusterSize - 1 && cx < clustersX - 1){
+            rebuildVerticalBorder(cx, cy);
+            rebuildEdges(getCluster(cx + 1, cy));
+        }
+        if(localY == 0 && cy > 0){
+            rebuildHorizontalBorder(cx, cy - 1);
+            rebuildEdges(getCluster(cx, cy - 1));
+        }
+        if(localY == clusterSize - 1 && cy < clustersY - 1){
+            rebuildHorizontalBorder(cx, cy);
+            rebuildEdges(getCluster(cx, cy + 1));
+        }
+        rebuildEdges(getCluster(cx, cy));
+        repairs++;
+    }
+
+    //border between clusters (cx, cy) and (cx + 1, cy)
+    private void rebuildVerticalBorder(int cx, int cy) {
+        if(cx >= clustersX - 1){
+            return;
+        }
+        IntArray transitions = verticalBorders[getCluster(cx, cy)];
+        removeTransitions(transitions);
+
+        int x = (cx + 1) * clusterSize - 1;
+        int from = cy * clusterSize;
+        int to = Math.min(from + clusterSize, grid.getHeight());
+        int runStart = -1;
+        for (int y = from; y <= to; y++) {
+            boolean open = y < to && grid.isWalkable(x, y) && grid.isWalkable(x + 1, y);
+            if(open && runStart == -1){
+                runStart = y;
+            } else if(!open && runStart != -1){
+                int runEnd = y - 1;
+                if(runEnd - runStart + 1 < WIDE_ENTRANCE){
+                    int middle = (runStart + runEnd) / 2;
+                    addTransition(transitions, grid.getIndex(x, middle), grid.getIndex(x + 1, middle));
+                } else {
+                    addTransition(transitions, grid.getIndex(x, runStart), grid.getIndex(x + 1, runStart));
+                    addTransition(transitions, grid.getIndex(x, runEnd), grid.getIndex(x + 1, runEnd));
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    //border between clusters (cx, cy) and (cx, cy + 1)
+    private void rebuildHorizontalBorder(int cx, int cy) {
+        if(cy >= clustersY - 1){
+            return;
+        }
+        IntArray transitions = horizontalBorders[getCluster(cx, cy)];
+        removeTransitions(transitions);
+
+        int y = (cy + 1) * clusterSize - 1;
+        int from = cx * clusterSize;
+        int to = Math.min(from + clusterSize, grid.getWidth());
+        int runStart = -1;
+        for (int x = from; x <= to; x++) {
+            boolean open = x < to && grid.isWalkable(x, y) && grid.isWalkable(x, y + 1);
+            if(open && runStart == -1){
+                runStart = x;
+            } else if(!open && runStart != -1){
+                int runEnd = x - 1;
+                if(runEnd - runStart + 1 < WIDE_ENTRANCE){
+                    int middle = (runStart + runEnd) / 2;
+                    addTransition(transitions, grid.getIndex(middle, y), grid.getIndex(middle, y + 1));
+                } else {
+                    addTransition(transitions, grid.getIndex(runStart, y), grid.getIndex(runStart, y + 1));
+                    addTransition(transitions, grid.getIndex(runEnd, y), grid.getIndex(runEnd, y + 1));
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    private void addTransition(IntArray transitions, int first, int second) {
+        AbstractNode firstNode = obtainNode(first);
+        AbstractNode secondNode = obtainNode(second);
+        firstNode.addEdge(second, 1);
+        secondNode.addEdge(first, 1);
+        transitions.add(first, second);
+    }
+
+    //in-cluster edges to removed nodes are left as is, edges of the affected clusters are rebuilt afterwards anyway
+    private void removeTransitions(IntArray transitions) {
+        for (int i = 0; i < transitions.size; i += 2) {
+            AbstractNode first = nodes.get(transitions.get(i));
+            AbstractNode second = nodes.get(transitions.get(i + 1));
+            first.removeEdge(second.tile);
+            second.removeEdge(first.tile);
+            releaseNode(first);
+            releaseNode(second);
+        }
+        transitions.clear();
+    }
+
+    private AbstractNode obtainNode(int index) {
+        AbstractNode node = nodes.get(index);
+        if(node == null){
+            node = new AbstractNode(index, getCluster(index));
+            nodes.put(index, node);
+            clusterNodes.get(node.cluster).add(node);
+        }
+        node.transitions++;
+        return node;
+    }
+
+    private void releaseNode(AbstractNode node) {
+        node.transitions--;
+        if(node.transitions == 0){
+            nodes.remove(node.tile);
+            clusterNodes.get(node.cluster).removeValue(node, true);
+        }
+    }
+
+    //recompute distances between all abstract nodes of the cluster
+    private void rebuildEdges(int cluster) {
+        Array<AbstractNode> clusterNodes = this.clusterNodes.get(cluster);
+        for (AbstractNode node : clusterNodes) {
+            for (int i = node.targets.size - 1; i >= 0; i--) {
+                AbstractNode target = nodes.get(node.targets.get(i));
+                if(target == null || target.cluster == cluster){
+                    node.targets.removeIndex(i);
+                    node.costs.removeIndex(i);
+                }
+            }
+        }
+
+        for (int i = 0; i < clusterNodes.size; i++) {
+            AbstractNode node = clusterNodes.get(i);
+            searchCluster(node.tile, cluster, -1);
+            for (int j = 0; j < clusterNodes.size; j++) {
+                AbstractNode other = clusterNodes.get(j);
+                if(other != node && reachedIn[other.tile] == searchId){
+                    node.addEdge(other.tile, distances[other.tile]);
+                }
+            }
+        }
+    }
+
+    /*
+     * Breadth-first search from the tile which does not leave the cluster.
+     * Stops when the goal is reached, -1 to visit the whole cluster.
+     * Start tile itself may be impassable (an entity standing in the doorway).
+     */
+    void searchCluster(int start, int cluster, int goal) {
+        searchId++;
+        int minX = (cluster / clustersY) * clusterSize;
+        int minY = (cluster % clustersY) * clusterSize;
+        int maxX = Math.min(minX + clusterSize, grid.getWidth());
+        int maxY = Math.min(minY + clusterSize, grid.getHeight());
+
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        reachedIn[start] = searchId;
+        distances[start] = 0;
+        parents[start] = -1;
+        while (head < tail){
+            int node = queue[head++];
+            if(node == goal){
+                return;
+            }
+            int x = grid.getX(node);
+            int y = grid.getY(node);
+            for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+                int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+                int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+                if(neighbourX < minX || neighbourX >= maxX || neighbourY < minY || neighbourY >= maxY){
+                    continue;
+                }
+                int neighbour = grid.getIndex(neighbourX, neighbourY);
+                if(reachedIn[neighbour] != searchId && grid.isWalkable(neighbour)){
+                    reachedIn[neighbour] = searchId;
+                    distances[neighbour] = distances[node] + 1;
+                    parents[neighbour] = node;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+    }
+
+    //valid after searchCluster() until the next search
+    boolean isReached(int index) {
+        return reachedIn[index] == searchId;
+    }
+
+    int getDistance(int index) {
+        return distances[index];
+    }
+
+    //appends tiles of the found in-cluster path to outPath, excluding the start one
+    void appendPath(int goal, IntArray outPath) {
+        int length = distances[goal];
+        int[] items = outPath.ensureCapacity(length);
+        int i = outPath.size + length;
+        for (int node = goal; parents[node] != -1; node = parents[node]) {
+            items[--i] = node;
+        }
+        outPath.size += length;
+    }
+
+    static class AbstractNode {
+        final int tile;
+        final int cluster;
+        int transitions;
+        final IntArray targets = new IntArray(false, 8);
+        final FloatArray costs = new FloatArray(false, 8);
+
+        AbstractNode(int tile, int cluster) {
+            this.tile = tile;
+            this.cluster = cluster;
+        }
+
+        void addEdge(int target, float cost) {
+            targets.add(target);
+            costs.add(cost);
+        }
+
+        void removeEdge(int target) {
+            int i = targets.indexOf(target);
+            if(i != -1){
+                targets.removeIndex(i);
+                costs.removeIndex(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.ai.pfa.Heuristic;
+import com.badlogic.gdx.ai.pfa.PathFinder;
+import com.badlogic.gdx.ai.pfa.PathFinderRequest;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntFloatMap;
+
+/*
+ * HPA* over HierarchicalGraph.
+ * Start and goal are temporarily connected to the abstract nodes of their clusters,
+ * A* runs over the abstract graph, then each abstract edge is refined into tiles by in-cluster search.
+ * Paths are near-optimal: at most a few tiles longer than the ones found by plain A*.
+ *
+ * Must be registered as a WalkabilityListener of the graph to keep clusters up to date.
+ */
+public class HierarchicalPathFinder implements PathFinder<GridTiledNode>, WalkabilityListener {
+
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    private final GridTiledGraph graph;
+    private final HierarchicalGraph abstractGraph;
+    private final WalkabilityGrid grid;
+
+    //abstract search state, indexed by tile
+    private final float[] costs;
+    private final int[] parents;
+    private final int[] openedIn;
+    private final int[] closedIn;
+    private final NodePriorityQueue openList;
+    private int searchId;
+
+    //temporary edges of start and goal which are not abstract nodes themselves
+    private final IntArray startTargets = new IntArray();
+    private final FloatArray startCosts = new FloatArray();
+    private final IntFloatMap goalSources = new IntFloatMap();
+
+    private final IntArray abstractPath = new IntArray();
+    private final IntArray tiles = new IntArray();
+
+    private int expandedNodes;
+
+    public HierarchicalPathFinder(GridTiledGraph graph) {
+        this(graph, DEFAULT_CLUSTER_SIZE);
+    }
+
+    public HierarchicalPathFinder(GridTiledGraph graph, int clusterSize) {
+        this.graph = graph;
+        this.grid = graph.getWalkability();
+        this.abstractGraph = new HierarchicalGraph(grid, clusterSize);
+
+        int size = grid.getSize();
+        costs = new float[size];
+        parents = new int[size];
+        openedIn = new int[size];
+        closedIn = new int[size];
+        openList = new NodePriorityQueue(size);
+    }
+
+    public HierarchicalGraph getAbstractGraph() {
+        return abstractGraph;
+    }
+
+    //abstract nodes expanded by the last search
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    @Override
+    public void walkabilityChanged(int index, boolean walkable) {
+        abstractGraph.walkabilityChanged(index, walkable);
+    }
+
+    //heuristic is ignored, manhattan distance is used as the only one admissible for this grid
+    @Override
+    public boolean searchNodePath(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic,
+                                  GraphPath<GridTiledNode> outPath) {
+        if(!search(startNode.getIndex(), endNode.getIndex(), tiles)){
+            return false;
+        }
+
+        for (int i = 0; i < tiles.size; i++) {
+            outPath.add(graph.getNode(tiles.get(i)));
+        }
+        return true;
+    }
+
+    //outPath is filled with indexes of all tiles from start to goal inclusive
+    public boolean search(int start, int goal, IntArray outPath) {
+        outPath.clear();
+        expandedNodes = 0;
+
+        if(!grid.isWalkable(goal)){
+            return false;
+        }
+        if(start == goal){
+            outPath.add(start);
+            return true;
+        }
+
+        connectStart(start, goal);
+        connectGoal(goal);
+        if(!searchAbstractPath(start, goal)){
+            return false;
+        }
+
+        outPath.add(start);
+        for (int i = 1; i < abstractPath.size; i++) {
+            int from = abstractPath.get(i - 1);
+            int to = abstractPath.get(i);
+            if(isAdjacent(from, to)){
+                outPath.add(to);
+            } else {
+                abstractGraph.searchCluster(from, abstractGraph.getCluster(from), to);
+                abstractGraph.appendPath(to, outPath);
+            }
+        }
+        return true;
+    }
+
+    private void connectStart(int start, int goal) {
+        startTargets.clear();
+        startCosts.clear();
+        if(abstractGraph.getNode(start) != null){
+            return;
+        }
+
+        int cluster = abstractGraph.getCluster(start);
+        abstractGraph.searchCluster(start, cluster, -1);
+        Array<HierarchicalGraph.AbstractNode> nodes = abstractGraph.getClusterNodes(cluster);
+        for (int i = 0; i < nodes.size; i++) {
+            int tile = nodes.get(i).tile;
+            if(abstractGraph.isReached(tile)){
+                startTargets.add(tile);
+                startCosts.add(abstractGraph.getDistance(tile));
+            }
+        }
+        //goal in the same cluster can be reached directly
+        if(abstractGraph.getNode(goal) == null && abstractGraph.isReached(goal)){
+            startTargets.add(goal);
+            startCosts.add(abstractGraph.getDistance(goal));
+        }
+    }
+
+    //grid is not directed, so distances from the goal are the same as distances to it
+    private void connectGoal(int goal) {
+        goalSources.clear();
+        if(abstractGraph.getNode(goal) != null){
+            return;
+        }
+
+        int cluster = abstractGraph.getCluster(goal);
+        abstractGraph.searchCluster(goal, cluster, -1);
+        Array<HierarchicalGraph.AbstractNode> nodes = abstractGraph.getClusterNodes(cluster);
+        for (int i = 0; i < nodes.size; i++) {
+            int tile = nodes.get(i).tile;
+            if(abstractGraph.isReached(tile)){
+                goalSources.put(tile, abstractGraph.getDistance(tile));
+            }
+        }
+    }
+
+    private boolean searchAbstractPath(int start, int goal) {
+        abstractPath.clear();
+        openList.clear();
+        searchId++;
+
+        costs[start] = 0;
+        parents[start] = -1;
+        openedIn[start] = searchId;
+        openList.add(start, estimate(start, goal));
+
+        while (!openList.isEmpty()){
+            int node = openList.poll();
+            closedIn[node] = searchId;
+
+            if(node == goal){
+                for (int tile = goal; tile != -1; tile = parents[tile]) {
+                    abstractPath.add(tile);
+                }
+                abstractPath.reverse();
+                return true;
+            }
+
+            expandedNodes++;
+            HierarchicalGraph.AbstractNode abstractNode = abstractGraph.getNode(node);
+            if(abstractNode != null){
+                for (int i = 0; i < abstractNode.targets.size; i++) {
+                    relax(node, abstractNode.targets.get(i), abstractNode.costs.get(i), goal);
+                }
+            } else if(node == start){
+                for (int i = 0; i < startTargets.size; i++) {
+                    relax(node, startTargets.get(i), startCosts.get(i), goal);
+                }
+            }
+            if(goalSources.containsKey(node)){
+                relax(node, goal, goalSources.get(node, 0), goal);
+            }
+        }
+
+        return false;
+    }
+
+    private void relax(int node, int target, float cost, int goal) {
+        if(closedIn[target] == searchId){
+            return;
+        }
+        cost += costs[node];
+        if(openedIn[target] != searchId || cost < costs[target]){
+            openedIn[target] = searchId;
+            costs[target] = cost;
+            parents[target] = node;
+            openList.add(target, cost + estimate(target, goal));
+        }
+    }
+
+    private float estimate(int from, int to) {
+        return Math.abs(grid.getX(from) - grid.getX(to)) + Math.abs(grid.getY(from) - grid.getY(to));
+    }
+
+    private boolean isAdjacent(int from, int to) {
+        return estimate(from, to) == 1;
+    }
+
+    @Override
+    public boolean searchConnectionPath(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic,
+                                        GraphPath<Connection<GridTiledNode>> outPath) {
+        if(!search(startNode.getIndex(), endNode.getIndex(), tiles)){
+            return false;
+        }
+
+        graph.addConnections(tiles, outPath);
+        return true;
+    }
+
+    //abstract graph is small, so the search is never interrupted
+    @Override
+    public boolean search(PathFinderRequest<GridTiledNode> request, long timeToRun) {
+        request.pathFound = searchNodePath(request.startNode, request.endNode, request.heuristic, request.resultPath);
+        return true;
+    }
+}
@@ -0,0 +1,252 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/*
+ * Jump Point Search over uniform-cost walkability grid.
+ * Orthogonal variant moves only in 4 directions, diagonal one also moves diagonally but never cuts corners.
+ * See http://harabor.net/data/papers/harabor-grastien-aaai11.pdf
+ *
+ * Jumps are done over the grid itself, the graph nodes are not touched at all.
+ * Found path contains every tile, not only jump points, so it can be followed step by step as a usual one.
+ */
+public class JumpPointSearch {
+
+    private static final float DIAGONAL_COST = (float)Math.sqrt(2);
+
+    private final WalkabilityGrid grid;
+    private final boolean diagonal;
+
+    private final float[] costs;
+    private final int[] parents;
+    private final int[] openedIn; //id of the search in which node was reached
+    private final int[] closedIn; //id of the search in which node was expanded
+    private final NodePriorityQueue openList;
+    private int searchId;
+
+    private int goalX;
+    private int goalY;
+
+    //neighbours of the expanded node, filled by findNeighbours()
+    private final int[] neighbourX = new int[8];
+    private final int[] neighbourY = new int[8];
+    private int neighbourCount;
+
+    private final IntArray jumpPoints = new IntArray();
+
+    private int expandedNodes;
+
+    public JumpPointSearch(WalkabilityGrid grid, boolean diagonal) {
+        this.grid = grid;
+        this.diagonal = diagonal;
+
+        int size = grid.getSize();
+        costs = new float[size];
+        parents = new int[size];
+        openedIn = new int[size];
+        closedIn = new int[size];
+        openList = new NodePriorityQueue(size);
+    }
+
+    public boolean isDiagonal() {
+        return diagonal;
+    }
+
+    //number of nodes expanded by the last search
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    //outPath is filled with indexes of all tiles from start to goal inclusive
+    public boolean search(int start, int goal, IntArray outPath) {
+        outPath.clear();
+        openList.clear();
+        expandedNodes = 0;
+        searchId++;
+
+        if(!grid.isWalkable(goal)){
+            return false;
+        }
+
+        goalX = grid.getX(goal);
+        goalY = grid.getY(goal);
+
+        costs[start] = 0;
+        parents[start] = -1;
+        openedIn[start] = searchId;
+        openList.add(start, estimate(grid.getX(start), grid.getY(start)));
+
+        while (!openList.isEmpty()){
+            int node = openList.poll();
+            closedIn[node] = searchId;
+
+            if(node == goal){
+                generatePath(goal, outPath);
+                return true;
+            }
+
+            expandedNodes++;
+            identifySuccessors(node);
+        }
+
+        return false;
+    }
+
+    private void identifySuccessors(int node) {
+        int x = grid.getX(node);
+        int y = grid.getY(node);
+
+        findNeighbours(node, x, y);
+        for (int i = 0; i < neighbourCount; i++) {
+            int jumpPoint = jump(neighbourX[i], neighbourY[i], neighbourX[i] - x, neighbourY[i] - y);
+            if(jumpPoint == -1 || closedIn[jumpPoint] == searchId){
+                continue;
+            }
+
+            int jumpX = grid.getX(jumpPoint);
+            int jumpY = grid.getY(jumpPoint);
+            float cost = costs[node] + distance(Math.abs(jumpX - x), Math.abs(jumpY - y));
+            if(openedIn[jumpPoint] != searchId || cost < costs[jumpPoint]){
+                openedIn[jumpPoint] = searchId;
+                costs[jumpPoint] = cost;
+                parents[jumpPoint] = node;
+                openList.add(jumpPoint, cost + estimate(jumpX, jumpY));
+            }
+        }
+    }
+
+    //pruned neighbours according to the direction of the movement from the parent
+    private void findNeighbours(int node, int x, int y) {
+        neighbourCount = 0;
+
+        int parent = parents[node];
+        if(parent == -1){
+            addNeighbour(x - 1, y);
+            addNeighbour(x + 1, y);
+            addNeighbour(x, y - 1);
+            addNeighbour(x, y + 1);
+            if(diagonal){
+                addDiagonalNeighbour(x, y, -1, -1);
+                addDiagonalNeighbour(x, y, -1, 1);
+                addDiagonalNeighbour(x, y, 1, -1);
+                addDiagonalNeighbour(x, y, 1, 1);
+            }
+            return;
+        }
+
+        int dx = Integer.signum(x - grid.getX(parent));
+        int dy = Integer.signum(y - grid.getY(parent));
+
+        if(dx != 0 && dy != 0){ //only diagonal search goes here
+            addNeighbour(x, y + dy);
+            addNeighbour(x + dx, y);
+            addDiagonalNeighbour(x, y, dx, dy);
+        } else if(dx != 0){
+            addNeighbour(x + dx, y);
+            addNeighbour(x, y - 1);
+            addNeighbour(x, y + 1);
+            if(diagonal){
+                addDiagonalNeighbour(x, y, dx, -1);
+                addDiagonalNeighbour(x, y, dx, 1);
+            }
+        } else {
+            addNeighbour(x, y + dy);
+            addNeighbour(x - 1, y);
+            addNeighbour(x + 1, y);
+            if(diagonal){
+                addDiagonalNeighbour(x, y, -1, dy);
+                addDiagonalNeighbour(x, y, 1, dy);
+            }
+        }
+    }
+
+    private void addNeighbour(int x, int y) {
+        if(grid.isWalkable(x, y)){
+            neighbourX[neighbourCount] = x;
+            neighbourY[neighbourCount] = y;
+            neighbourCount++;
+        }
+    }
+
+    //diagonal step is allowed only if both orthogonal tiles are free
+    private void addDiagonalNeighbour(int x, int y, int dx, int dy) {
+        if(grid.isWalkable(x + dx, y) && grid.isWalkable(x, y + dy)){
+            addNeighbour(x + dx, y + dy);
+        }
+    }
+
+    //x, y is the first tile after the jump start. Returns index of the found jump point or -1
+    private int jump(int x, int y, int dx, int dy) {
+        while (true){
+            if(!grid.isWalkable(x, y)){
+                return -1;
+            }
+            if(x == goalX && y == goalY){
+                return grid.getIndex(x, y);
+            }
+
+            if(dx != 0 && dy != 0){
+                //moving diagonally, must check for horizontal and vertical jump points
+                if(jump(x + dx, y, dx, 0) != -1 || jump(x, y + dy, 0, dy) != -1){
+                    return grid.getIndex(x, y);
+                }
+                if(!grid.isWalkable(x + dx, y) || !grid.isWalkable(x, y + dy)){
+                    return -1; //can't cut the corner
+                }
+            } else if(dx != 0){
+                if((grid.isWalkable(x, y - 1) && !grid.isWalkable(x - dx, y - 1)) ||
+                        (grid.isWalkable(x, y + 1) && !grid.isWalkable(x - dx, y + 1))){
+                    return grid.getIndex(x, y);
+                }
+            } else {
+                if((grid.isWalkable(x - 1, y) && !grid.isWalkable(x - 1, y - dy)) ||
+                        (grid.isWalkable(x + 1, y) && !grid.isWalkable(x + 1, y - dy))){
+                    return grid.getIndex(x, y);
+                }
+                //without diagonals vertical movement plays its role and must check for horizontal jump points
+                if(!diagonal && (jump(x - 1, y, -1, 0) != -1 || jump(x + 1, y, 1, 0) != -1)){
+                    return grid.getIndex(x, y);
+                }
+            }
+
+            x += dx;
+            y += dy;
+        }
+    }
+
+    private float estimate(int x, int y) {
+        return distance(Math.abs(goalX - x), Math.abs(goalY - y));
+    }
+
+    //manhattan distance for the orthogonal search and octile for the diagonal one
+    private float distance(int deltaX, int deltaY) {
+        if(diagonal){
+            int straight = Math.abs(deltaX - deltaY);
+            return straight + DIAGONAL_COST * Math.min(deltaX, deltaY);
+        }
+        return deltaX + deltaY;
+    }
+
+    //restore jump points and fill gaps between them
+    private void generatePath(int goal, IntArray outPath) {
+        jumpPoints.clear();
+        for (int node = goal; node != -1; node = parents[node]) {
+            jumpPoints.add(node);
+        }
+
+        int x = grid.getX(jumpPoints.peek());
+        int y = grid.getY(jumpPoints.peek());
+        outPath.add(jumpPoints.peek());
+        for (int i = jumpPoints.size - 2; i >= 0; i--) {
+            int toX = grid.getX(jumpPoints.get(i));
+            int toY = grid.getY(jumpPoints.get(i));
+            int dx = Integer.signum(toX - x);
+            int dy = Integer.signum(toY - y);
+            while (x != toX || y != toY){
+                x += dx;
+                y += dy;
+                outPath.add(grid.getIndex(x, y));
+            }
+        }
+    }
+}
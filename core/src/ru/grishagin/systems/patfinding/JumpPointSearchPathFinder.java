@@ -0,0 +1,57 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.Connection;
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.ai.pfa.Heuristic;
+import com.badlogic.gdx.ai.pfa.PathFinder;
+import com.badlogic.gdx.ai.pfa.PathFinderRequest;
+import com.badlogic.gdx.utils.IntArray;
+
+//adapter of JumpPointSearch to the gdx-ai PathFinder, so it can replace IndexedAStarPathFinder
+public class JumpPointSearchPathFinder implements PathFinder<GridTiledNode> {
+
+    private final GridTiledGraph graph;
+    private final JumpPointSearch search;
+    private final IntArray tiles = new IntArray();
+
+    public JumpPointSearchPathFinder(GridTiledGraph graph, boolean diagonal) {
+        this.graph = graph;
+        this.search = new JumpPointSearch(graph.getWalkability(), diagonal);
+    }
+
+    public JumpPointSearch getSearch() {
+        return search;
+    }
+
+    //heuristic is ignored, the search uses manhattan or octile distance depending on its type
+    @Override
+    public boolean searchNodePath(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic,
+                                  GraphPath<GridTiledNode> outPath) {
+        if(!search.search(startNode.getIndex(), endNode.getIndex(), tiles)){
+            return false;
+        }
+
+        for (int i = 0; i < tiles.size; i++) {
+            outPath.add(graph.getNode(tiles.get(i)));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean searchConnectionPath(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic,
+                                        GraphPath<Connection<GridTiledNode>> outPath) {
+        if(!search.search(startNode.getIndex(), endNode.getIndex(), tiles)){
+            return false;
+        }
+
+        graph.addConnections(tiles, outPath);
+        return true;
+    }
+
+    //jumps are fast enough, so the search is never interrupted
+    @Override
+    public boolean search(PathFinderRequest<GridTiledNode> request, long timeToRun) {
+        request.pathFound = searchNodePath(request.startNode, request.endNode, request.heuristic, request.resultPath);
+        return true;
+    }
+}
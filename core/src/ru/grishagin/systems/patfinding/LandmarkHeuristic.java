@@ -0,0 +1,52 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.Heuristic;
+import ru.grishagin.utils.Logger;
+
+/*
+ * ALT heuristic: the best of the landmark bound and the usual distance heuristic.
+ *
+ * The table is built with all doors open. A closed door can only make real paths longer,
+ * so the bound stays admissible whatever doors do. Any other tile which was closed when the table was built
+ * and gets opened may make a path shorter than the table knows, then only the usual heuristic is used.
+ *
+ * Read-only apart from the validity flag, so one instance may be shared with path worker threads.
+ */
+public class LandmarkHeuristic implements Heuristic<GridTiledNode>, WalkabilityListener {
+
+    private final LandmarkTable table;
+    private final WalkabilityGrid openGrid; //walkability the table is built for
+    private final Heuristic<GridTiledNode> heuristic;
+    private volatile boolean valid = true;
+
+    public LandmarkHeuristic(LandmarkTable table, WalkabilityGrid openGrid, Heuristic<GridTiledNode> heuristic) {
+        this.table = table;
+        this.openGrid = openGrid;
+        this.heuristic = heuristic;
+    }
+
+    public LandmarkTable getTable() {
+        return table;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public float estimate(GridTiledNode node, GridTiledNode endNode) {
+        float estimate = heuristic.estimate(node, endNode);
+        if(valid){
+            estimate = Math.max(estimate, table.estimate(node.getIndex(), endNode.getIndex()));
+        }
+        return estimate;
+    }
+
+    @Override
+    public void walkabilityChanged(int index, boolean walkable) {
+        if(walkable && valid && !openGrid.isWalkable(index)){
+            valid = false;
+            Logger.info("Tile " + openGrid.getX(index) + ", " + openGrid.getY(index) + " is opened, landmarks are not used anymore");
+        }
+    }
+}
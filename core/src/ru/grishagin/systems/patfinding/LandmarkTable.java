@@ -0,0 +1,269 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.badlogic.gdx.utils.TimeUtils;
+import ru.grishagin.utils.Logger;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Distances from a few landmark tiles to every tile, for the ALT heuristic:
+ * by the triangle inequality |d(L, a) - d(L, b)| <= d(a, b) for any landmark L.
+ *
+ * Distances are fixed point numbers in 16 bits, rounded down. Rounding may make a difference of two distances
+ * up to one unit bigger than the real one, so it's subtracted back and the bound is still a lower one.
+ * Landmarks are chosen one by one as far as possible from the already chosen ones, so they end up in the corners
+ * and dead ends of the map, where they give the best bounds.
+ *
+ * Tables don't depend on anything but walkability, so they are saved to the cache directory and loaded next time.
+ * A table shipped next to the map in assets is used too. Generated ones are never written there:
+ * desktop runs have the assets directory as the working one, so local files would end up in it.
+ */
+public class LandmarkTable {
+
+    public static final int DEFAULT_LANDMARKS = 8;
+
+    private static final String CACHE_DIRECTORY = ".kingofthedump/cache/"; //in external storage, local one on Android
+    private static final int MAGIC = 0x414c5431; //"ALT1"
+    private static final int SCALE = 8; //units per orthogonal step
+    private static final char UNREACHABLE = Character.MAX_VALUE;
+    private static final char MAX_DISTANCE = Character.MAX_VALUE - 1;
+
+    private final int size;
+    private final boolean diagonal;
+    private final int checksum; //of walkability the table is built for
+    private final int[] landmarks;
+    private final char[] distances; //landmark * size + tile
+
+    private LandmarkTable(int size, boolean diagonal, int checksum, int[] landmarks, char[] distances) {
+        this.size = size;
+        this.diagonal = diagonal;
+        this.checksum = checksum;
+        this.landmarks = landmarks;
+        this.distances = distances;
+    }
+
+    public int getLandmarkCount() {
+        return landmarks.length;
+    }
+
+    public int getLandmark(int i) {
+        return landmarks[i];
+    }
+
+    public boolean isDiagonal() {
+        return diagonal;
+    }
+
+    //lower bound of the path cost between two tiles
+    public float estimate(int from, int to) {
+        int best = 0;
+        for (int offset = 0; offset < distances.length; offset += size) {
+            char fromDistance = distances[offset + from];
+            char toDistance = distances[offset + to];
+            if(fromDistance != UNREACHABLE && toDistance != UNREACHABLE){
+                best = Math.max(best, Math.abs(fromDistance - toDistance) - 1);
+            }
+        }
+        return best / (float)SCALE;
+    }
+
+    /*
+     * Table of the map file is loaded if it's built for the same walkability, otherwise it's built and saved.
+     * Maps which are not loaded from files just get a new table.
+     */
+    public static LandmarkTable loadOrBuild(String mapFileName, WalkabilityGrid grid, boolean diagonal, int landmarkCount) {
+        int checksum = getChecksum(grid);
+        FileHandle file = null;
+        if(mapFileName != null && Gdx.files != null){
+            String fileName = mapFileName + (diagonal ? ".alt8" : ".alt4");
+            file = getCacheFile(fileName);
+            if(!file.exists()){
+                file = Gdx.files.internal(fileName);
+            }
+            if(file.exists()){
+                LandmarkTable table = load(file, grid.getSize(), diagonal, checksum, landmarkCount);
+                if(table != null){
+                    return table;
+                }
+            }
+            file = getCacheFile(fileName);
+        }
+
+        long start = TimeUtils.nanoTime();
+        LandmarkTable table = build(grid, diagonal, landmarkCount, checksum);
+        Logger.info(landmarkCount + " landmarks are built in " + TimeUtils.nanosToMillis(TimeUtils.timeSinceNanos(start)) + " ms");
+        if(file != null){
+            table.save(file, landmarkCount);
+        }
+        return table;
+    }
+
+    public static LandmarkTable build(WalkabilityGrid grid, boolean diagonal, int landmarkCount) {
+        return build(grid, diagonal, landmarkCount, getChecksum(grid));
+    }
+
+    private static LandmarkTable build(WalkabilityGrid grid, boolean diagonal, int landmarkCount, int checksum) {
+        int size = grid.getSize();
+        float[] distance = new float[size];
+        float[] closest = new float[size]; //distance to the closest chosen landmark
+        Arrays.fill(closest, Float.MAX_VALUE);
+        NodePriorityQueue queue = new NodePriorityQueue(size);
+
+        int first = 0;
+        while (first < size && !grid.isWalkable(first)){
+            first++;
+        }
+        if(first == size){
+            return new LandmarkTable(size, diagonal, checksum, new int[0], new char[0]);
+        }
+
+        //the first landmark is the tile farthest from an arbitrary one
+        search(grid, diagonal, first, distance, queue);
+        int next = getFarthest(grid, distance);
+
+        int[] landmarks = new int[landmarkCount];
+        char[] distances = new char[landmarkCount * size];
+        int count = 0;
+        while (count < landmarkCount && next != -1){
+            landmarks[count] = next;
+            search(grid, diagonal, next, distance, queue);
+            for (int tile = 0; tile < size; tile++) {
+                float tileDistance = distance[tile];
+                distances[count * size + tile] = tileDistance == Float.MAX_VALUE ? UNREACHABLE
+                        : (char)Math.min((int)(tileDistance * SCALE), MAX_DISTANCE);
+                closest[tile] = Math.min(closest[tile], tileDistance);
+            }
+            count++;
+            next = getFarthest(grid, closest);
+        }
+
+        return new LandmarkTable(size, diagonal, checksum, Arrays.copyOf(landmarks, count), Arrays.copyOf(distances, count * size));
+    }
+
+    //walkable tile with the biggest distance, unreachable ones go first so every connected area gets a landmark.
+    //-1 if all tiles are landmarks
+    private static int getFarthest(WalkabilityGrid grid, float[] distance) {
+        int farthest = -1;
+        for (int tile = 0; tile < distance.length; tile++) {
+            if(grid.isWalkable(tile) && (farthest == -1 || distance[tile] > distance[farthest])){
+                farthest = tile;
+            }
+        }
+        return farthest == -1 || distance[farthest] == 0 ? -1 : farthest;
+    }
+
+    //Dijkstra with the same moves and costs as GridTiledGraph
+    private static void search(WalkabilityGrid grid, boolean diagonal, int start, float[] distance, NodePriorityQueue queue) {
+        Arrays.fill(distance, Float.MAX_VALUE);
+        queue.clear();
+        distance[start] = 0;
+        queue.add(start, 0);
+        while (!queue.isEmpty()){
+            int tile = queue.poll();
+            int x = grid.getX(tile);
+            int y = grid.getY(tile);
+            for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+                int neighbourX = x + GridTiledGraph.X_OFFSETS[direction];
+                int neighbourY = y + GridTiledGraph.Y_OFFSETS[direction];
+                if(grid.isWalkable(neighbourX, neighbourY)){
+                    relax(grid.getIndex(neighbourX, neighbourY), distance[tile] + FlatTiledConnection.ORTHOGONAL_COST, distance, queue);
+                }
+            }
+            if(!diagonal){
+                continue;
+            }
+            for (int direction = 0; direction < GridTiledGraph.DIRECTIONS; direction++) {
+                int neighbourX = x + GridTiledGraph.DIAGONAL_X_OFFSETS[direction];
+                int neighbourY = y + GridTiledGraph.DIAGONAL_Y_OFFSETS[direction];
+                int next = (direction + 1) % GridTiledGraph.DIRECTIONS;
+                if(grid.isWalkable(neighbourX, neighbourY)
+                        && grid.isWalkable(x + GridTiledGraph.X_OFFSETS[direction], y + GridTiledGraph.Y_OFFSETS[direction])
+                        && grid.isWalkable(x + GridTiledGraph.X_OFFSETS[next], y + GridTiledGraph.Y_OFFSETS[next])){
+                    relax(grid.getIndex(neighbourX, neighbourY), distance[tile] + FlatTiledConnection.DIAGONAL_COST, distance, queue);
+                }
+            }
+        }
+    }
+
+    private static void relax(int tile, float tileDistance, float[] distance, NodePriorityQueue queue) {
+        if(tileDistance < distance[tile]){
+            distance[tile] = tileDistance;
+            queue.add(tile, tileDistance);
+        }
+    }
+
+    private static FileHandle getCacheFile(String fileName) {
+        if(Gdx.app != null && Gdx.app.getType() == Application.ApplicationType.Android){
+            return Gdx.files.local(CACHE_DIRECTORY + fileName);
+        }
+        return Gdx.files.external(CACHE_DIRECTORY + fileName);
+    }
+
+    private static int getChecksum(WalkabilityGrid grid) {
+        int checksum = grid.getWidth() * 31 + grid.getHeight();
+        for (int i = 0; i < grid.getSize(); i++) {
+            checksum = checksum * 31 + (grid.isWalkable(i) ? 1 : 0);
+        }
+        return checksum;
+    }
+
+    private static LandmarkTable load(FileHandle file, int size, boolean diagonal, int checksum, int landmarkCount) {
+        DataInputStream input = new DataInputStream(file.read(8192));
+        try {
+            if(input.readInt() != MAGIC || input.readInt() != size || input.readBoolean() != diagonal
+                    || input.readInt() != checksum || input.readInt() != landmarkCount){
+                Logger.info("Landmarks in " + file.path() + " are out of date");
+                return null;
+            }
+            int count = input.readInt();
+            int[] landmarks = new int[count];
+            for (int i = 0; i < count; i++) {
+                landmarks[i] = input.readInt();
+            }
+            char[] distances = new char[count * size];
+            for (int i = 0; i < distances.length; i++) {
+                distances[i] = input.readChar();
+            }
+            return new LandmarkTable(size, diagonal, checksum, landmarks, distances);
+        } catch (IOException e){
+            Logger.warning("Can't read landmarks from " + file.path() + ": " + e);
+            return null;
+        } finally {
+            StreamUtils.closeQuietly(input);
+        }
+    }
+
+    //fails silently where the cache can't be written, the table is just built again next time
+    private void save(FileHandle file, int landmarkCount) {
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(file.write(false, 8192));
+            output.writeInt(MAGIC);
+            output.writeInt(size);
+            output.writeBoolean(diagonal);
+            output.writeInt(checksum);
+            output.writeInt(landmarkCount);
+            output.writeInt(landmarks.length);
+            for (int landmark : landmarks) {
+                output.writeInt(landmark);
+            }
+            for (char distance : distances) {
+                output.writeChar(distance);
+            }
+        } catch (IOException e){
+            Logger.warning("Can't save landmarks to " + file.path() + ": " + e);
+        } catch (GdxRuntimeException e){
+            Logger.warning("Can't save landmarks to " + file.path() + ": " + e);
+        } finally {
+            StreamUtils.closeQuietly(output);
+        }
+    }
+}
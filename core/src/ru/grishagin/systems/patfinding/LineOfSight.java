@@ -0,0 +1,255 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.utils.Collision;
+import com.badlogic.gdx.ai.utils.Ray;
+import com.badlogic.gdx.ai.utils.RaycastCollisionDetector;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+
+/*
+ * Segments between tile positions over walkability bits.
+ * A position is on the tile it truncates to, like everywhere in the game, so the segment crosses every tile
+ * [x, x + 1) x [y, y + 1) holding any of its points, even for a moment (a supercover of the segment).
+ * Tiles of one row across the major axis are a straight run, each run is checked as a range of bits:
+ * vertical runs are consecutive in the walkability grid, horizontal ones in the transposed copy kept here.
+ * So a long line costs a few word reads instead of a node per tile.
+ *
+ * Where the segment goes exactly through a corner of tiles, all four tiles around it must be walkable:
+ * an entity there is a rounding error away from any of them. So a clear line never cuts a corner of a wall.
+ */
+public class LineOfSight implements WalkabilityListener, RaycastCollisionDetector<Vector2> {
+
+    private final WalkabilityGrid grid;
+    private final int[] rows; //y * width + x
+    private final IntArray walk = new IntArray(); //filled by walk()
+
+    private int checks;
+    private int runs;
+
+    public LineOfSight(WalkabilityGrid grid) {
+        this.grid = grid;
+        rows = new int[(grid.getSize() + 31) >>> 5];
+        for (int i = 0; i < grid.getSize(); i++) {
+            if(grid.isWalkable(i)){
+                int row = grid.getY(i) * grid.getWidth() + grid.getX(i);
+                rows[row >>> 5] |= 1 << row;
+            }
+        }
+    }
+
+    //the ends themselves are not checked: an entity may stand in a doorway or look at an impassable object
+    public boolean isClear(int x0, int y0, int x1, int y1) {
+        checks++;
+        if(!grid.isInside(x0, y0) || !grid.isInside(x1, y1)){
+            return false;
+        }
+
+        //lines are always drawn from the lower end, so a line and its reverse are the same
+        boolean vertical = Math.abs(y1 - y0) >= Math.abs(x1 - x0);
+        if(vertical ? y0 > y1 : x0 > x1){
+            int tmp = x0;
+            x0 = x1;
+            x1 = tmp;
+            tmp = y0;
+            y0 = y1;
+            y1 = tmp;
+        }
+        if(vertical){
+            return isClear(y0, x0, y1 - y0, x1 - x0, true);
+        } else {
+            return isClear(x0, y0, x1 - x0, y1 - y0, false);
+        }
+    }
+
+    /*
+     * Minor coordinate goes by minorDelta while the major one goes by majorLength. Between the k-th and the next crossing
+     * of minor grid lines the segment is in one row, in major tiles from floor(k * majorLength / minorLength)
+     * to ceil((k + 1) * majorLength / minorLength) - 1. The row is minor0 + k going up and minor0 - k - 1 going down:
+     * a position just below a grid line is on the lower tile.
+     * The start tile is only in the first run going up, the end one is never in a run, both are excluded.
+     */
+    private boolean isClear(int major0, int minor0, int majorLength, int minorDelta, boolean vertical) {
+        int minorLength = Math.abs(minorDelta);
+        if(minorLength == 0){
+            return isRunClear(major0, minor0, 1, majorLength - 1, vertical);
+        }
+
+        for (int k = 0; k < minorLength; k++) {
+            int minor = minorDelta > 0 ? minor0 + k : minor0 - k - 1;
+            int start = k * majorLength / minorLength;
+            int end = ceilDiv((k + 1) * majorLength, minorLength) - 1;
+            if(!isRunClear(major0, minor, k == 0 && minorDelta > 0 ? 1 : start, end, vertical)){
+                return false;
+            }
+            //the segment goes through the corner of tiles where this run starts
+            if(k > 0 && k * majorLength % minorLength == 0
+                    && !isCornerClear(major0 + start, minorDelta > 0 ? minor0 + k : minor0 - k, major0, minor0, vertical)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //four tiles around the corner point, the start tile of the line may be one of them and it's not checked
+    private boolean isCornerClear(int major, int minor, int startMajor, int startMinor, boolean vertical) {
+        for (int i = major - 1; i <= major; i++) {
+            for (int j = minor - 1; j <= minor; j++) {
+                if((i != startMajor || j != startMinor) && !isWalkable(i, j, vertical)){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isRunClear(int major0, int minor, int start, int end, boolean vertical) {
+        if(start > end){
+            return true;
+        }
+        runs++;
+        if(vertical){
+            return grid.isRunWalkable(grid.getIndex(minor, major0 + start), grid.getIndex(minor, major0 + end));
+        } else {
+            int row = minor * grid.getWidth();
+            return WalkabilityGrid.isRangeSet(rows, row + major0 + start, row + major0 + end);
+        }
+    }
+
+    private boolean isWalkable(int major, int minor, boolean vertical) {
+        return vertical ? grid.isWalkable(minor, major) : grid.isWalkable(major, minor);
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    //lines checked since the start, for statistics
+    public int getChecks() {
+        return checks;
+    }
+
+    //runs checked since the start, each is a few word reads at most
+    public int getRuns() {
+        return runs;
+    }
+
+    @Override
+    public void walkabilityChanged(int index, boolean walkable) {
+        int row = grid.getY(index) * grid.getWidth() + grid.getX(index);
+        if(walkable){
+            rows[row >>> 5] |= 1 << row;
+        } else {
+            rows[row >>> 5] &= ~(1 << row);
+        }
+    }
+
+    //used by PathSmoother, ray ends are tile positions
+    @Override
+    public boolean collides(Ray<Vector2> ray) {
+        return !isClear((int)ray.start.x, (int)ray.start.y, (int)ray.end.x, (int)ray.end.y);
+    }
+
+    //the blocked tile the ray gets into first is reported, tiles are the ones collides() checks
+    @Override
+    public boolean findCollision(Collision<Vector2> outputCollision, Ray<Vector2> inputRay) {
+        int x0 = (int)inputRay.start.x;
+        int y0 = (int)inputRay.start.y;
+        int x1 = (int)inputRay.end.x;
+        int y1 = (int)inputRay.end.y;
+        checks++;
+        if(!grid.isInside(x0, y0) || !grid.isInside(x1, y1)){
+            //collides, but there is no tile to report
+            outputCollision.set(inputRay.start, Vector2.Zero);
+            return true;
+        }
+
+        walk(x0, y0, x1, y1);
+        int found = -1;
+        float foundTime = 0;
+        boolean foundSideX = false;
+        for (int i = 0; i < walk.size; i++) {
+            int tile = walk.get(i);
+            if(grid.isWalkable(tile)){
+                continue;
+            }
+            float timeX = getEntryTime(grid.getX(tile), x0, x1 - x0);
+            float timeY = getEntryTime(grid.getY(tile), y0, y1 - y0);
+            float time = Math.max(timeX, timeY);
+            if(found == -1 || time < foundTime){
+                found = tile;
+                foundTime = time;
+                foundSideX = timeX >= timeY; //the axis which is the last to get into the tile gives the side
+            }
+        }
+        if(found == -1){
+            return false;
+        }
+        setCollision(outputCollision, inputRay, found,
+                foundSideX ? -Integer.signum(x1 - x0) : 0, foundSideX ? 0 : -Integer.signum(y1 - y0));
+        return true;
+    }
+
+    //tiles isClear() checks, in no particular order and some of them twice
+    private void walk(int x0, int y0, int x1, int y1) {
+        walk.clear();
+        boolean vertical = Math.abs(y1 - y0) >= Math.abs(x1 - x0);
+        boolean swap = vertical ? y0 > y1 : x0 > x1;
+        int major0 = vertical ? Math.min(y0, y1) : Math.min(x0, x1);
+        int minor0 = vertical ? (swap ? x1 : x0) : (swap ? y1 : y0);
+        int majorLength = vertical ? Math.abs(y1 - y0) : Math.abs(x1 - x0);
+        int minorDelta = (vertical ? x1 - x0 : y1 - y0) * (swap ? -1 : 1);
+        int minorLength = Math.abs(minorDelta);
+        if(minorLength == 0){
+            addRun(major0, minor0, 1, majorLength - 1, vertical);
+            return;
+        }
+
+        for (int k = 0; k < minorLength; k++) {
+            int minor = minorDelta > 0 ? minor0 + k : minor0 - k - 1;
+            int start = k * majorLength / minorLength;
+            addRun(major0, minor, k == 0 && minorDelta > 0 ? 1 : start, ceilDiv((k + 1) * majorLength, minorLength) - 1, vertical);
+            if(k > 0 && k * majorLength % minorLength == 0){
+                int cornerMinor = minorDelta > 0 ? minor0 + k : minor0 - k;
+                for (int i = major0 + start - 1; i <= major0 + start; i++) {
+                    for (int j = cornerMinor - 1; j <= cornerMinor; j++) {
+                        if(i != major0 || j != minor0){
+                            walk.add(vertical ? grid.getIndex(j, i) : grid.getIndex(i, j));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void addRun(int major0, int minor, int start, int end, boolean vertical) {
+        for (int i = major0 + start; i <= major0 + end; i++) {
+            walk.add(vertical ? grid.getIndex(minor, i) : grid.getIndex(i, minor));
+        }
+    }
+
+    //part of the segment from start by delta after which it's in [tile, tile + 1) along one axis
+    private static float getEntryTime(int tile, int start, int delta) {
+        if(delta == 0){
+            return Float.NEGATIVE_INFINITY; //it's in all the way, the other axis decides
+        }
+        return (delta > 0 ? tile - start : tile + 1 - start) / (float)delta;
+    }
+
+    //the normal points out of the side the ray gets in through. The point is where the ray crosses that side,
+    //moved onto the side itself: tiles of the line are taken from the truncated ends, so the ray may pass a bit aside
+    private void setCollision(Collision<Vector2> collision, Ray<Vector2> ray, int tile, int normalX, int normalY) {
+        int x = grid.getX(tile);
+        int y = grid.getY(tile);
+        if(normalX != 0){
+            float sideX = x + (normalX > 0 ? 1 : 0);
+            float t = (sideX - ray.start.x) / (ray.end.x - ray.start.x);
+            collision.point.set(sideX, MathUtils.clamp(ray.start.y + (ray.end.y - ray.start.y) * t, y, y + 1));
+        } else {
+            float sideY = y + (normalY > 0 ? 1 : 0);
+            float t = (sideY - ray.start.y) / (ray.end.y - ray.start.y);
+            collision.point.set(MathUtils.clamp(ray.start.x + (ray.end.x - ray.start.x) * t, x, x + 1), sideY);
+        }
+        collision.normal.set(normalX, normalY);
+    }
+}
@@ -0,0 +1,40 @@
+package ru.grishagin.systems.patfinding;
+
+//cells for one thread, e.g. the game thread
+public class LongArrayCells implements LongCells {
+
+    private final long[] cells;
+
+    public LongArrayCells(int size) {
+        cells = new long[size];
+    }
+
+    @Override
+    public int size() {
+        return cells.length;
+    }
+
+    @Override
+    public long get(int index) {
+        return cells[index];
+    }
+
+    @Override
+    public void set(int index, long value) {
+        cells[index] = value;
+    }
+
+    @Override
+    public void add(int index, long delta) {
+        cells[index] += delta;
+    }
+
+    @Override
+    public boolean compareAndSet(int index, long expected, long value) {
+        if(cells[index] != expected){
+            return false;
+        }
+        cells[index] = value;
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package ru.grishagin.systems.patfinding;
+
+//fixed number of long values kept by RollingHistogram. Plain array by default,
+//concurrent.AtomicLongCells for recording from several threads (not available on GWT)
+public interface LongCells {
+
+    int size();
+
+    long get(int index);
+
+    void set(int index, long value);
+
+    void add(int index, long delta);
+
+    //sets the value only if the cell still holds the expected one, true if it's set
+    boolean compareAndSet(int index, long expected, long value);
+}
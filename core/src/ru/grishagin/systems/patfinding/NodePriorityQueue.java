@@ -0,0 +1,134 @@
+package ru.grishagin.systems.patfinding;
+
+import java.util.Arrays;
+
+/*
+ * Binary min-heap of node indices for searches over primitive arrays.
+ * Heap position of every node is stored by its index, so priority can be changed without a linear scan.
+ */
+public class NodePriorityQueue {
+
+    private final int[] heap;
+    private final int[] positions; //-1 if node is not in the queue
+    private final double[] priorities; //doubles keep two-part integer keys exact, see DStarLite
+    private int size;
+
+    public NodePriorityQueue(int nodeCount) {
+        heap = new int[nodeCount];
+        positions = new int[nodeCount];
+        priorities = new double[nodeCount];
+        Arrays.fill(positions, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int node) {
+        return positions[node] != -1;
+    }
+
+    public double getPriority(int node) {
+        return priorities[node];
+    }
+
+    //adds node or changes its priority if it is already in the queue
+    public void add(int node, double priority) {
+        int position = positions[node];
+        if(position == -1){
+            position = size++;
+            heap[position] = node;
+            positions[node] = position;
+            priorities[node] = priority;
+            siftUp(position);
+        } else {
+            double oldPriority = priorities[node];
+            priorities[node] = priority;
+            if(priority < oldPriority){
+                siftUp(position);
+            } else {
+                siftDown(position);
+            }
+        }
+    }
+
+    public int peek() {
+        return heap[0];
+    }
+
+    public int poll() {
+        int node = heap[0];
+        removeAt(0);
+        return node;
+    }
+
+    public void remove(int node) {
+        int position = positions[node];
+        if(position != -1){
+            removeAt(position);
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void removeAt(int position) {
+        int node = heap[position];
+        positions[node] = -1;
+        size--;
+        if(position != size){
+            int last = heap[size];
+            heap[position] = last;
+            positions[last] = position;
+            siftUp(position);
+            siftDown(positions[last]);
+        }
+    }
+
+    private void siftUp(int position) {
+        int node = heap[position];
+        double priority = priorities[node];
+        while (position > 0){
+            int parentPosition = (position - 1) >>> 1;
+            int parent = heap[parentPosition];
+            if(priorities[parent] <= priority){
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+
+    private void siftDown(int position) {
+        int node = heap[position];
+        double priority = priorities[node];
+        while (true){
+            int child = (position << 1) + 1;
+            if(child >= size){
+                break;
+            }
+            if(child + 1 < size && priorities[heap[child + 1]] < priorities[heap[child]]){
+                child++;
+            }
+            if(priorities[heap[child]] >= priority){
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[child]] = position;
+            position = child;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+}
@@ -0,0 +1,195 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.GraphPath;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+
+/*
+ * Found paths by start and end tile, the least recently used ones are evicted.
+ * Map is split into square regions. When a tile changes, only paths passing through its region are dropped,
+ * the others stay valid (though a just opened door may give a shorter way).
+ * A path is cached only if it was found on the current version of the grid,
+ * so a search which has been running while a door changed doesn't get into the cache.
+ *
+ * Key is start * size + end in a long, unique for any map an int can index.
+ */
+public class PathCache implements WalkabilityListener {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int DEFAULT_REGION_SIZE = 8;
+
+    private final WalkabilityGrid grid;
+    private final int capacity;
+    private final int regionSize;
+    private final int regionsY;
+
+    private final LongMap<Entry> entries = new LongMap<Entry>();
+    private final Array<Array<Entry>> regionEntries;
+    //most recently used first
+    private Entry head;
+    private Entry tail;
+
+    private int hits;
+    private int misses;
+    private int invalidations;
+
+    public PathCache(WalkabilityGrid grid) {
+        this(grid, DEFAULT_CAPACITY, DEFAULT_REGION_SIZE);
+    }
+
+    public PathCache(WalkabilityGrid grid, int capacity, int regionSize) {
+        this.grid = grid;
+        this.capacity = capacity;
+        this.regionSize = regionSize;
+
+        int regionsX = (grid.getWidth() + regionSize - 1) / regionSize;
+        regionsY = (grid.getHeight() + regionSize - 1) / regionSize;
+        regionEntries = new Array<Array<Entry>>(regionsX * regionsY);
+        for (int i = 0; i < regionsX * regionsY; i++) {
+            regionEntries.add(new Array<Entry>(false, 4));
+        }
+    }
+
+    //fills outPath and returns true if the path is cached
+    public boolean get(GridTiledGraph graph, int start, int end, GraphPath<GridTiledNode> outPath) {
+        Entry entry = entries.get(getKey(start, end));
+        if(entry == null){
+            misses++;
+            return false;
+        }
+
+        hits++;
+        moveToHead(entry);
+        for (int i = 0; i < entry.tiles.size; i++) {
+            outPath.add(graph.getNode(entry.tiles.get(i)));
+        }
+        return true;
+    }
+
+    //version is the grid version the path was searched on
+    public void put(int start, int end, GraphPath<GridTiledNode> path, int version) {
+        if(version != grid.getVersion() || path.getCount() == 0){
+            return;
+        }
+
+        long key = getKey(start, end);
+        Entry entry = entries.get(key);
+        if(entry != null){
+            remove(entry);
+        }
+        if(entries.size >= capacity){
+            remove(tail);
+        }
+
+        entry = new Entry(key);
+        for (int i = 0; i < path.getCount(); i++) {
+            int tile = path.get(i).getIndex();
+            entry.tiles.add(tile);
+            int region = getRegion(tile);
+            if(!entry.regions.contains(region)){
+                entry.regions.add(region);
+                regionEntries.get(region).add(entry);
+            }
+        }
+        entries.put(key, entry);
+        addToHead(entry);
+    }
+
+    @Override
+    public void walkabilityChanged(int index, boolean walkable) {
+        Array<Entry> affected = regionEntries.get(getRegion(index));
+        while (affected.size > 0){
+            remove(affected.peek());
+            invalidations++;
+        }
+    }
+
+    public void clear() {
+        while (tail != null){
+            remove(tail);
+        }
+    }
+
+    public int size() {
+        return entries.size;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    //paths dropped because of walkability changes
+    public int getInvalidations() {
+        return invalidations;
+    }
+
+    private long getKey(int start, int end) {
+        return (long)start * grid.getSize() + end;
+    }
+
+    private int getRegion(int index) {
+        return (grid.getX(index) / regionSize) * regionsY + grid.getY(index) / regionSize;
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.key);
+        for (int i = 0; i < entry.regions.size; i++) {
+            regionEntries.get(entry.regions.get(i)).removeValue(entry, true);
+        }
+
+        if(entry.previous != null){
+            entry.previous.next = entry.next;
+        } else {
+            head = entry.next;
+        }
+        if(entry.next != null){
+            entry.next.previous = entry.previous;
+        } else {
+            tail = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    private void addToHead(Entry entry) {
+        entry.next = head;
+        if(head != null){
+            head.previous = entry;
+        }
+        head = entry;
+        if(tail == null){
+            tail = entry;
+        }
+    }
+
+    private void moveToHead(Entry entry) {
+        if(entry == head){
+            return;
+        }
+        entry.previous.next = entry.next;
+        if(entry.next != null){
+            entry.next.previous = entry.previous;
+        } else {
+            tail = entry.previous;
+        }
+        entry.previous = null;
+        addToHead(entry);
+    }
+
+    private static class Entry {
+        final long key;
+        final IntArray tiles = new IntArray();
+        final IntArray regions = new IntArray(4);
+        Entry previous;
+        Entry next;
+
+        Entry(long key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.Heuristic;
+import com.badlogic.gdx.ai.pfa.PathFinder;
+import com.badlogic.gdx.ai.pfa.PathSmoother;
+import com.badlogic.gdx.ai.pfa.indexed.IndexedAStarPathFinder;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.TimeUtils;
+import ru.grishagin.utils.Logger;
+
+/*
+ * Runs the same set of random queries with different path finders over one graph
+ * and compares expanded nodes and search time.
+ */
+public class PathFinderBenchmark {
+
+    private static final int WARM_UP_ROUNDS = 3;
+
+    private final GridTiledGraph graph;
+    private final IntArray queries = new IntArray(); //start and end index one after another
+    private Heuristic<GridTiledNode> heuristic = new TiledManhattanDistance<GridTiledNode>();
+
+    public PathFinderBenchmark(GridTiledGraph graph, int queryCount, long seed) {
+        this.graph = graph;
+
+        WalkabilityGrid walkability = graph.getWalkability();
+        RandomXS128 random = new RandomXS128(seed);
+        while (queries.size < queryCount * 2){
+            int index = random.nextInt(walkability.getSize());
+            if(walkability.isWalkable(index)){
+                queries.add(index);
+            }
+        }
+    }
+
+    public Result run(PathFinderType type){
+        PathFinder<GridTiledNode> pathFinder = type == PathFinderType.A_STAR ?
+                new CountingAStarPathFinder(graph) : type.create(graph);
+
+        return run(type.toString(), pathFinder);
+    }
+
+    private Result run(String name, PathFinder<GridTiledNode> pathFinder){
+        return run(name, pathFinder, queries);
+    }
+
+    private Result run(String name, PathFinder<GridTiledNode> pathFinder, IntArray queries){
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            runQueries(pathFinder, queries, new Result(name));
+        }
+
+        Result result = new Result(name);
+        long start = TimeUtils.nanoTime();
+        runQueries(pathFinder, queries, result);
+        result.time = TimeUtils.nanoTime() - start;
+        return result;
+    }
+
+    /*
+     * A* with 4 and 8 connected movement and matched heuristics.
+     * Steps used to cost sqrt(2) each while manhattan heuristic estimated 1 per tile,
+     * that's the same search as unit costs with the heuristic scaled by 1/sqrt(2), so the old setup is reproduced this way.
+     */
+    public void reportMovement(String title){
+        boolean diagonal = graph.isDiagonal();
+        Logger.info(title + ": " + queries.size / 2 + " A* queries on " +
+                graph.getWalkability().getWidth() + "x" + graph.getWalkability().getHeight());
+
+        graph.setDiagonal(false);
+        heuristic = new ScaledHeuristic(new TiledManhattanDistance<GridTiledNode>(), 1 / FlatTiledConnection.DIAGONAL_COST);
+        Logger.info(run("4-connected, old costs", new CountingAStarPathFinder(graph)).toString());
+        heuristic = new TiledManhattanDistance<GridTiledNode>();
+        Logger.info(run("4-connected, manhattan", new CountingAStarPathFinder(graph)).toString());
+
+        graph.setDiagonal(true);
+        heuristic = new TiledOctileDistance<GridTiledNode>();
+        Logger.info(run("8-connected, octile", new CountingAStarPathFinder(graph)).toString());
+
+        graph.setDiagonal(diagonal);
+        heuristic = new TiledManhattanDistance<GridTiledNode>();
+    }
+
+    private void runQueries(PathFinder<GridTiledNode> pathFinder, IntArray queries, Result result){
+        TiledSmoothableGraphPath<GridTiledNode> path = new TiledSmoothableGraphPath<GridTiledNode>();
+        for (int i = 0; i < queries.size; i += 2) {
+            path.clear();
+            if(pathFinder.searchNodePath(graph.getNode(queries.get(i)), graph.getNode(queries.get(i + 1)), heuristic, path)){
+                result.found++;
+                result.pathLength += path.getCount();
+            }
+            result.expandedNodes += getExpandedNodes(pathFinder);
+            result.queries++;
+        }
+    }
+
+    private int getExpandedNodes(PathFinder<GridTiledNode> pathFinder){
+        if(pathFinder instanceof CountingAStarPathFinder){
+            return ((CountingAStarPathFinder) pathFinder).expandedNodes;
+        }
+        return PathFindingMetrics.getExpandedNodes(pathFinder);
+    }
+
+    public void report(String title, PathFinderType... types){
+        Logger.info(title + ": " + queries.size / 2 + " queries on " +
+                graph.getWalkability().getWidth() + "x" + graph.getWalkability().getHeight());
+        for (PathFinderType type : types) {
+            Logger.info(run(type).toString());
+        }
+    }
+
+    public static class Result {
+        public final String name;
+        public int queries;
+        public int found;
+        public long pathLength;
+        public long expandedNodes;
+        public long time; //nanoseconds
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": found " + found + "/" + queries +
+                    ", avg path " + (found == 0 ? 0 : pathLength / found) +
+                    ", avg expanded " + expandedNodes / Math.max(queries, 1) +
+                    ", avg time " + time / Math.max(queries, 1) / 1000 + " us";
+        }
+    }
+
+    //A* with the distance heuristic and with ALT over it. Table build time is not counted
+    public void reportLandmarks(String title, int landmarkCount){
+        boolean diagonal = graph.isDiagonal();
+        Heuristic<GridTiledNode> distance = diagonal ?
+                new TiledOctileDistance<GridTiledNode>() : new TiledManhattanDistance<GridTiledNode>();
+        long start = TimeUtils.nanoTime();
+        LandmarkTable table = LandmarkTable.build(graph.getWalkability(), diagonal, landmarkCount);
+        Logger.info(title + ": " + queries.size / 2 + " A* queries, " + table.getLandmarkCount() + " landmarks built in "
+                + TimeUtils.nanosToMillis(TimeUtils.timeSinceNanos(start)) + " ms");
+
+        heuristic = distance;
+        Logger.info(run("distance", new CountingAStarPathFinder(graph)).toString());
+        heuristic = new LandmarkHeuristic(table, graph.getWalkability(), distance);
+        Logger.info(run("landmarks", new CountingAStarPathFinder(graph)).toString());
+        heuristic = new TiledManhattanDistance<GridTiledNode>();
+    }
+
+    //A* and bidirectional A* on the queries shorter and longer than the given distance
+    public void reportBidirectional(String title, int longDistance){
+        IntArray shortQueries = new IntArray();
+        IntArray longQueries = new IntArray();
+        for (int i = 0; i < queries.size; i += 2) {
+            GridTiledNode startNode = graph.getNode(queries.get(i));
+            GridTiledNode endNode = graph.getNode(queries.get(i + 1));
+            IntArray routes = heuristic.estimate(startNode, endNode) < longDistance ? shortQueries : longQueries;
+            routes.add(startNode.getIndex(), endNode.getIndex());
+        }
+
+        Logger.info(title + ": " + shortQueries.size / 2 + " routes shorter than " + longDistance + " tiles");
+        Logger.info(run("A*", new CountingAStarPathFinder(graph), shortQueries).toString());
+        Logger.info(run("bidirectional A*", new BidirectionalAStarPathFinder(graph), shortQueries).toString());
+        Logger.info(title + ": " + longQueries.size / 2 + " routes of " + longDistance + " tiles and longer");
+        Logger.info(run("A*", new CountingAStarPathFinder(graph), longQueries).toString());
+        Logger.info(run("bidirectional A*", new BidirectionalAStarPathFinder(graph), longQueries).toString());
+    }
+
+    /*
+     * A* paths smoothed over LineOfSight, 4 and 8 connected. Segments an entity would go through a closed tile on
+     * are counted, there must be none: a position is on the tile it truncates to, and the segment is checked
+     * by its own means here, cut at every grid line it crosses.
+     */
+    public void reportSmoothing(String title){
+        boolean diagonal = graph.isDiagonal();
+        WalkabilityGrid walkability = graph.getWalkability();
+        PathSmoother<GridTiledNode, Vector2> smoother = new PathSmoother<GridTiledNode, Vector2>(new LineOfSight(walkability));
+        TiledSmoothableGraphPath<GridTiledNode> path = new TiledSmoothableGraphPath<GridTiledNode>();
+        for (int mode = 0; mode < 2; mode++) {
+            graph.setDiagonal(mode == 1);
+            heuristic = mode == 1 ? new TiledOctileDistance<GridTiledNode>() : new TiledManhattanDistance<GridTiledNode>();
+            PathFinder<GridTiledNode> pathFinder = new IndexedAStarPathFinder<GridTiledNode>(graph);
+            int found = 0;
+            long tiles = 0;
+            long waypoints = 0;
+            int segments = 0;
+            int throughClosed = 0;
+            for (int i = 0; i < queries.size; i += 2) {
+                path.clear();
+                if(!pathFinder.searchNodePath(graph.getNode(queries.get(i)), graph.getNode(queries.get(i + 1)), heuristic, path)){
+                    continue;
+                }
+                found++;
+                tiles += path.getCount();
+                smoother.smoothPath(path);
+                waypoints += path.getCount();
+                for (int j = 1; j < path.getCount(); j++) {
+                    segments++;
+                    if(isThroughClosed(walkability, path.get(j - 1).x, path.get(j - 1).y, path.get(j).x, path.get(j).y)){
+                        throughClosed++;
+                    }
+                }
+            }
+            Logger.info(title + (mode == 1 ? ", 8-connected" : ", 4-connected") + ": " + found + " paths, avg "
+                    + tiles / Math.max(found, 1) + " tiles -> " + (float)waypoints / Math.max(found, 1) + " waypoints, "
+                    + throughClosed + "/" + segments + " segments through closed tiles");
+        }
+        graph.setDiagonal(diagonal);
+        heuristic = new TiledManhattanDistance<GridTiledNode>();
+    }
+
+    //ends are not counted. Crossings of grid lines are at i / |dx| and j / |dy| of the way,
+    //taken in units of 1 / (|dx| * |dy|), the tile of each piece between them is the one of its middle
+    private static boolean isThroughClosed(WalkabilityGrid walkability, int x0, int y0, int x1, int y1){
+        int dx = x1 - x0;
+        int dy = y1 - y0;
+        int stepsX = Math.abs(dx);
+        int stepsY = Math.abs(dy);
+        long total = (long)Math.max(stepsX, 1) * Math.max(stepsY, 1);
+        int i = 1;
+        int j = 1;
+        long previous = 0;
+        while (previous < total){
+            long nextX = i < stepsX ? (long)i * Math.max(stepsY, 1) : total;
+            long nextY = j < stepsY ? (long)j * Math.max(stepsX, 1) : total;
+            long next = Math.min(nextX, nextY);
+            if(nextX == next){
+                i++;
+            }
+            if(nextY == next){
+                j++;
+            }
+            int x = x0 + floorDiv(dx * (previous + next), 2 * total);
+            int y = y0 + floorDiv(dy * (previous + next), 2 * total);
+            if((x != x0 || y != y0) && (x != x1 || y != y1) && !walkability.isWalkable(x, y)){
+                return true;
+            }
+            previous = next;
+        }
+        return false;
+    }
+
+    private static int floorDiv(long dividend, long divisor){
+        long quotient = dividend / divisor;
+        return (int)(dividend % divisor < 0 ? quotient - 1 : quotient);
+    }
+
+    private static class ScaledHeuristic implements Heuristic<GridTiledNode> {
+        private final Heuristic<GridTiledNode> heuristic;
+        private final float scale;
+
+        ScaledHeuristic(Heuristic<GridTiledNode> heuristic, float scale) {
+            this.heuristic = heuristic;
+            this.scale = scale;
+        }
+
+        @Override
+        public float estimate(GridTiledNode node, GridTiledNode endNode) {
+            return heuristic.estimate(node, endNode) * scale;
+        }
+    }
+
+    //counts expanded nodes, IndexedAStarPathFinder.Metrics counts visited connections instead
+    private static class CountingAStarPathFinder extends IndexedAStarPathFinder<GridTiledNode> {
+        int expandedNodes;
+
+        CountingAStarPathFinder(GridTiledGraph graph) {
+            super(graph);
+        }
+
+        @Override
+        protected void initSearch(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic) {
+            super.initSearch(startNode, endNode, heuristic);
+            expandedNodes = 0;
+        }
+
+        @Override
+        protected void visitChildren(GridTiledNode endNode, Heuristic<GridTiledNode> heuristic) {
+            expandedNodes++;
+            super.visitChildren(endNode, heuristic);
+        }
+    }
+}
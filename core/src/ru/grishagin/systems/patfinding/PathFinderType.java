@@ -0,0 +1,24 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.PathFinder;
+import com.badlogic.gdx.ai.pfa.indexed.IndexedAStarPathFinder;
+
+public enum PathFinderType {
+    A_STAR,
+    JUMP_POINT,
+    JUMP_POINT_DIAGONAL,
+    HIERARCHICAL;
+
+    public PathFinder<GridTiledNode> create(GridTiledGraph graph){
+        switch (this){
+            case JUMP_POINT:
+                return new JumpPointSearchPathFinder(graph, false);
+            case JUMP_POINT_DIAGONAL:
+                return new JumpPointSearchPathFinder(graph, true);
+            case HIERARCHICAL:
+                return new HierarchicalPathFinder(graph);
+            default:
+                return new IndexedAStarPathFinder<GridTiledNode>(graph, true);
+        }
+    }
+}
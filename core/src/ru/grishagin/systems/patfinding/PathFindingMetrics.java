@@ -0,0 +1,132 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.PathFinder;
+import com.badlogic.gdx.ai.pfa.indexed.IndexedAStarPathFinder;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/*
+ * Costs of path queries over the last seconds, see RollingHistogram.
+ * Searched queries record expanded nodes, time of the search itself (all frames of a time-sliced search together)
+ * and time from the request to the path including waiting in the queue. Queries answered without search
+ * are counted as cache hits or as failures with no expanded nodes (start and goal in different regions).
+ * Queries are recorded and read on the game thread, where MovementSystem handles their results,
+ * so the histograms keep plain LongArrayCells and work on GWT too.
+ */
+public class PathFindingMetrics {
+
+    public static final long SLICE_MILLIS = 1000;
+    public static final int SLICES = 10;
+
+    private final RollingHistogram expandedNodes = createHistogram();
+    private final RollingHistogram searchTime = createHistogram(); //nanoseconds
+    private final RollingHistogram latency = createHistogram(); //nanoseconds
+    private final RollingHistogram pathLength = createHistogram(); //tiles of found paths, cached ones too
+    private final RollingHistogram cacheHits = createHistogram(); //path length of each hit
+    private final RollingHistogram failures = createHistogram(); //expanded nodes of each query without path
+    private final RollingHistogram plannedNodes = createHistogram(); //expanded nodes of each cooperative plan
+
+    private final String[] names = {"expanded_nodes", "search_time_ns", "latency_ns", "path_length", "cache_hits", "failures", "planned_nodes"};
+    private final RollingHistogram[] histograms = {expandedNodes, searchTime, latency, pathLength, cacheHits, failures, plannedNodes};
+    private final RollingHistogram.Snapshot snapshot = new RollingHistogram.Snapshot(); //for writeCsv() only
+
+    private static RollingHistogram createHistogram() {
+        return new RollingHistogram(SLICE_MILLIS, SLICES);
+    }
+
+    //pathLength is in tiles, -1 if the path is not found
+    public void recordSearch(int expandedNodes, long searchTime, long latency, int pathLength) {
+        this.expandedNodes.record(expandedNodes);
+        this.searchTime.record(searchTime);
+        this.latency.record(latency);
+        if(pathLength >= 0){
+            this.pathLength.record(pathLength);
+        } else {
+            failures.record(expandedNodes);
+        }
+    }
+
+    public void recordSearch(PathRequest request) {
+        recordSearch(request.expandedNodes, request.searchTime, TimeUtils.nanoTime() - request.createdTime,
+                request.pathFound ? request.path.getCount() : -1);
+    }
+
+    public void recordCacheHit(int pathLength) {
+        cacheHits.record(pathLength);
+        this.pathLength.record(pathLength);
+    }
+
+    //the query is known to have no path without searching
+    public void recordRejected() {
+        failures.record(0);
+    }
+
+    public void recordPlan(int expandedNodes) {
+        plannedNodes.record(expandedNodes);
+    }
+
+    public RollingHistogram getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    public RollingHistogram getSearchTime() {
+        return searchTime;
+    }
+
+    public RollingHistogram getLatency() {
+        return latency;
+    }
+
+    public RollingHistogram getPathLength() {
+        return pathLength;
+    }
+
+    public RollingHistogram getCacheHits() {
+        return cacheHits;
+    }
+
+    public RollingHistogram getFailures() {
+        return failures;
+    }
+
+    public RollingHistogram getPlannedNodes() {
+        return plannedNodes;
+    }
+
+    /*
+     * Non-empty buckets of every histogram as "time,metric,from,to,count" rows, time is in milliseconds.
+     * Dumps made one after another may be appended to the same file, the header is written only if asked.
+     * Not thread safe, unlike recording.
+     */
+    public void writeCsv(StringBuilder out, boolean header) {
+        if(header){
+            out.append("time,metric,from,to,count\n");
+        }
+        long time = TimeUtils.millis();
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].getSnapshot(snapshot);
+            for (int bucket = 0; bucket < RollingHistogram.BUCKETS; bucket++) {
+                if(snapshot.counts[bucket] > 0){
+                    out.append(time).append(',').append(names[i]).append(',')
+                            .append(RollingHistogram.getBucketFrom(bucket)).append(',')
+                            .append(RollingHistogram.getBucketTo(bucket)).append(',')
+                            .append(snapshot.counts[bucket]).append('\n');
+                }
+            }
+        }
+    }
+
+    //nodes expanded by the last search of the path finders which count them, 0 for others
+    public static int getExpandedNodes(PathFinder<GridTiledNode> pathFinder) {
+        if(pathFinder instanceof IndexedAStarPathFinder){
+            IndexedAStarPathFinder.Metrics metrics = ((IndexedAStarPathFinder<GridTiledNode>) pathFinder).metrics;
+            return metrics == null ? 0 : metrics.visitedNodes;
+        } else if(pathFinder instanceof JumpPointSearchPathFinder){
+            return ((JumpPointSearchPathFinder) pathFinder).getSearch().getExpandedNodes();
+        } else if(pathFinder instanceof HierarchicalPathFinder){
+            return ((HierarchicalPathFinder) pathFinder).getExpandedNodes();
+        } else if(pathFinder instanceof BidirectionalAStarPathFinder){
+            return ((BidirectionalAStarPathFinder) pathFinder).getExpandedNodes();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,50 @@
+package ru.grishagin.systems.patfinding;
+
+/*
+ * Set of tiles the search may end at: tiles within the range around the center tile.
+ * With zero range the goal is the center itself, otherwise the center is excluded,
+ * because it's occupied by the object the entity is going to.
+ */
+public class PathGoal {
+
+    private static final float SQRT_2 = (float)Math.sqrt(2);
+
+    public final int x;
+    public final int y;
+    public final float range;
+    private final int reach; //max manhattan distance from the center to a goal tile
+
+    public PathGoal(int x, int y, float range) {
+        this.x = x;
+        this.y = y;
+        this.range = range;
+        this.reach = (int)(range * SQRT_2);
+    }
+
+    public static PathGoal tile(int x, int y) {
+        return new PathGoal(x, y, 0);
+    }
+
+    //any of 4 neighbours of the tile
+    public static PathGoal adjacentTo(int x, int y) {
+        return new PathGoal(x, y, 1);
+    }
+
+    public static PathGoal withinRange(int x, int y, float range) {
+        return new PathGoal(x, y, range);
+    }
+
+    public boolean isGoal(int tileX, int tileY) {
+        int deltaX = tileX - x;
+        int deltaY = tileY - y;
+        if(deltaX == 0 && deltaY == 0){
+            return range == 0;
+        }
+        return deltaX * deltaX + deltaY * deltaY <= range * range;
+    }
+
+    //lower bound of steps to the closest goal tile
+    public int estimate(int tileX, int tileY) {
+        return Math.max(0, Math.abs(tileX - x) + Math.abs(tileY - y) - reach);
+    }
+}
@@ -0,0 +1,48 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.Heuristic;
+import com.badlogic.gdx.ai.pfa.PathFinderRequest;
+import com.badlogic.gdx.utils.TimeUtils;
+
+//path request which is processed by PathRequestQueue, possibly during several frames
+public class PathRequest extends PathFinderRequest<GridTiledNode> {
+
+    public final TiledSmoothableGraphPath<GridTiledNode> path;
+    //if set, the search ends at any tile of the goal and endNode is ignored
+    public PathGoal goal;
+    //searched from both ends at once by BidirectionalAStarPathFinder instead of the queue's path finder
+    public boolean bidirectional;
+    //filled by the processor for PathFindingMetrics
+    public final long createdTime = TimeUtils.nanoTime();
+    public int expandedNodes;
+    public long searchTime; //nanoseconds, all frames and repeated searches together
+    private boolean cancelled;
+
+    public PathRequest(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic) {
+        this(startNode, endNode, heuristic, new TiledSmoothableGraphPath<GridTiledNode>());
+    }
+
+    private PathRequest(GridTiledNode startNode, GridTiledNode endNode, Heuristic<GridTiledNode> heuristic,
+                        TiledSmoothableGraphPath<GridTiledNode> path) {
+        super(startNode, endNode, heuristic, path);
+        this.path = path;
+    }
+
+    public boolean isDone() {
+        return status == SEARCH_FINALIZED;
+    }
+
+    public void finish(boolean pathFound) {
+        this.pathFound = pathFound;
+        changeStatus(SEARCH_FINALIZED);
+    }
+
+    //cancelled requests are dropped by the queue without searching
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.grishagin.systems.patfinding;
+
+//processes path requests of MovementSystem. Everything is called from the game thread
+public interface PathRequestProcessor {
+
+    //called for every new map and path finder type.
+    //Pending requests are kept if the graph is the same, otherwise they are finished without path
+    void init(GridTiledGraph graph, PathFinderType type);
+
+    void add(PathRequest request);
+
+    //timeToRun in nanoseconds. Returns number of requests which became done
+    int run(long timeToRun);
+
+    //pending requests including the ones in progress
+    int size();
+
+    void dispose();
+}
@@ -0,0 +1,141 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.PathFinder;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.Queue;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/*
+ * Processes path requests one by one within the given time per frame.
+ * A search which doesn't fit into the time is interrupted and resumed on the next run,
+ * so the path finder must support PathFinder.search(request, timeToRun) (IndexedAStarPathFinder does).
+ * Works the same way as gdx-ai PathFinderQueue, but requests can be cancelled and no messages are sent:
+ * clients poll PathRequest.isDone().
+ */
+public class PathRequestQueue implements PathRequestProcessor {
+
+    private final Queue<PathRequest> requests = new Queue<PathRequest>();
+    private GridTiledGraph graph;
+    private PathFinder<GridTiledNode> pathFinder;
+    private PathRequest currentRequest;
+    private GridAStar goalSearch;
+    private BidirectionalAStarPathFinder bidirectionalSearch;
+    private final IntArray tiles = new IntArray();
+
+    public PathRequestQueue() {
+    }
+
+    public PathRequestQueue(PathFinder<GridTiledNode> pathFinder) {
+        this.pathFinder = pathFinder;
+    }
+
+    //path finders with their own precomputed data (HPA* clusters) must know about opened and closed doors
+    @Override
+    public void init(GridTiledGraph graph, PathFinderType type) {
+        if(this.graph != null && pathFinder instanceof WalkabilityListener){
+            this.graph.removeListener((WalkabilityListener) pathFinder);
+        }
+        if(this.graph != graph){
+            clear();
+        } else if(currentRequest != null){
+            currentRequest.changeStatus(PathRequest.SEARCH_NEW); //interrupted search is started from scratch
+        }
+
+        if(this.graph != graph){
+            goalSearch = new GridAStar(graph.getWalkability());
+            bidirectionalSearch = new BidirectionalAStarPathFinder(graph);
+        }
+        this.graph = graph;
+        pathFinder = type.create(graph);
+        if(pathFinder instanceof WalkabilityListener){
+            graph.addListener((WalkabilityListener) pathFinder);
+        }
+    }
+
+    public PathFinder<GridTiledNode> getPathFinder() {
+        return pathFinder;
+    }
+
+    private PathFinder<GridTiledNode> getPathFinder(PathRequest request) {
+        return request.bidirectional ? bidirectionalSearch : pathFinder;
+    }
+
+    @Override
+    public void add(PathRequest request) {
+        requests.addLast(request);
+    }
+
+    @Override
+    public int size() {
+        return requests.size + (currentRequest == null ? 0 : 1);
+    }
+
+    @Override
+    public int run(long timeToRun) {
+        long deadline = TimeUtils.nanoTime() + timeToRun;
+        int completed = 0;
+        while (true){
+            if(currentRequest == null){
+                if(requests.size == 0){
+                    return completed;
+                }
+                currentRequest = requests.removeFirst();
+            }
+
+            if(!currentRequest.isCancelled()){
+                long timeLeft = deadline - TimeUtils.nanoTime();
+                if(timeLeft <= 0){
+                    return completed;
+                }
+                if(currentRequest.status == PathRequest.SEARCH_NEW){
+                    currentRequest.changeStatus(PathRequest.SEARCH_INITIALIZED);
+                }
+                currentRequest.executionFrames++;
+                long start = TimeUtils.nanoTime();
+                PathFinder<GridTiledNode> pathFinder = getPathFinder(currentRequest);
+                boolean finished = true;
+                if(currentRequest.goal != null){
+                    searchGoal(currentRequest);
+                } else {
+                    finished = pathFinder.search(currentRequest, timeLeft);
+                }
+                currentRequest.searchTime += TimeUtils.nanoTime() - start;
+                if(!finished){
+                    return completed; //out of time, continue on the next run
+                }
+                currentRequest.expandedNodes = currentRequest.goal != null ? goalSearch.getExpandedNodes()
+                        : PathFindingMetrics.getExpandedNodes(pathFinder);
+                currentRequest.finish(currentRequest.pathFound);
+                completed++;
+            }
+            currentRequest = null;
+        }
+    }
+
+    //goal search is fast enough to be done at once
+    private void searchGoal(PathRequest request) {
+        request.pathFound = goalSearch.search(request.startNode.getIndex(), request.goal, tiles);
+        for (int i = 0; i < tiles.size; i++) {
+            request.resultPath.add(graph.getNode(tiles.get(i)));
+        }
+    }
+
+    //pending requests are finished without path
+    public void clear() {
+        if(currentRequest != null){
+            currentRequest.finish(false);
+            currentRequest = null;
+        }
+        while (requests.size > 0){
+            requests.removeFirst().finish(false);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if(graph != null && pathFinder instanceof WalkabilityListener){
+            graph.removeListener((WalkabilityListener) pathFinder);
+        }
+        clear();
+    }
+}
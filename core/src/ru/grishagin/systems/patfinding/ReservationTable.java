@@ -0,0 +1,109 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.utils.IntIntMap;
+
+/*
+ * Tiles reserved by moving agents for the next few time slots, see CooperativePlanner.
+ * Only the slots from the current one to window slots ahead are kept, in a ring: when time goes on,
+ * the passed slots are cleared and reused for the new far ones. So reservations are never released explicitly
+ * (though they may be), they just expire, and memory is bounded by agents * (window + 1) entries.
+ */
+public class ReservationTable {
+
+    public static final int NO_AGENT = -1;
+
+    private final int window;
+    private final IntIntMap[] slots; //tile -> agent, slot of time t is t % (window + 1)
+    private int time;
+
+    public ReservationTable(int window) {
+        this.window = window;
+        slots = new IntIntMap[window + 1];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new IntIntMap();
+        }
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    //current time slot
+    public int getTime() {
+        return time;
+    }
+
+    //passed slots are dropped, time never goes back
+    public void advance(int time) {
+        if(time <= this.time){
+            return;
+        }
+        int passed = Math.min(time - this.time, slots.length);
+        for (int i = 0; i < passed; i++) {
+            getSlot(this.time + i).clear();
+        }
+        this.time = time;
+    }
+
+    public boolean isInWindow(int time) {
+        return time >= this.time && time <= this.time + window;
+    }
+
+    //NO_AGENT if the tile is free at the time or the time is out of the window
+    public int getAgent(int tile, int time) {
+        if(!isInWindow(time)){
+            return NO_AGENT;
+        }
+        return getSlot(time).get(tile, NO_AGENT);
+    }
+
+    //the tile is taken at the time by the agent. Reservations out of the window are ignored
+    public void reserve(int tile, int time, int agent) {
+        if(isInWindow(time)){
+            getSlot(time).put(tile, agent);
+        }
+    }
+
+    //drops the reservation only if it's the agent's one
+    public void release(int tile, int time, int agent) {
+        if(isInWindow(time) && getSlot(time).get(tile, NO_AGENT) == agent){
+            getSlot(time).remove(tile, NO_AGENT);
+        }
+    }
+
+    /*
+     * Agent may step from one tile to another arriving at the time if nobody else is there at that time
+     * and nobody goes the opposite way at the same time (agents can't pass through each other).
+     * Waiting is a step to the same tile.
+     */
+    public boolean canMove(int agent, int fromTile, int toTile, int time) {
+        int other = getAgent(toTile, time);
+        if(other != NO_AGENT && other != agent){
+            return false;
+        }
+        if(fromTile == toTile){
+            return true;
+        }
+        other = getAgent(toTile, time - 1);
+        return other == NO_AGENT || other == agent || getAgent(fromTile, time) != other;
+    }
+
+    //reservations in all slots, for statistics
+    public int size() {
+        int size = 0;
+        for (IntIntMap slot : slots) {
+            size += slot.size;
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (IntIntMap slot : slots) {
+            slot.clear();
+        }
+    }
+
+    private IntIntMap getSlot(int time) {
+        return slots[time % slots.length];
+    }
+}
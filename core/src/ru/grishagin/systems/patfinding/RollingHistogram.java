@@ -0,0 +1,169 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+/*
+ * Histogram of values recorded during the last few time slices, e.g. the last 10 seconds by 1 second.
+ * Slices are kept in a ring: the first value of a new slice takes the place of the oldest one.
+ *
+ * Values are counted in buckets with 8 per power of two, so a value read back is at most 1/8 bigger than recorded.
+ * Memory is fixed, recording is a few operations on LongCells without allocations. With LongArrayCells (the default,
+ * and the only ones on GWT) one thread records and reads. With concurrent.AtomicLongCells any thread may record
+ * and read at any time without locks. The price is that values recorded at the very moment
+ * their slice is taken over by a new one may be lost, and a reader may see a slice half way through.
+ */
+public class RollingHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BITS = 40; //bigger values (over 18 minutes in nanoseconds) are counted as the max one
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    public static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    //cells of a slice, one after another
+    private static final int EPOCH = 0; //slice number since the epoch, tells which slice of time is kept in the place
+    private static final int SUM = 1;
+    private static final int MAX = 2;
+    private static final int COUNTS = 3; //first of BUCKETS cells
+    private static final int SLICE_CELLS = COUNTS + BUCKETS;
+
+    private final long sliceMillis;
+    private final int slices;
+    private final LongCells cells;
+
+    public RollingHistogram(long sliceMillis, int slices) {
+        this(sliceMillis, slices, new LongArrayCells(getCellCount(slices)));
+    }
+
+    //cells must be of getCellCount(slices) size
+    public RollingHistogram(long sliceMillis, int slices, LongCells cells) {
+        if(cells.size() != getCellCount(slices)){
+            throw new IllegalArgumentException("Histogram of " + slices + " slices needs " + getCellCount(slices)
+                    + " cells, got " + cells.size());
+        }
+        this.sliceMillis = sliceMillis;
+        this.slices = slices;
+        this.cells = cells;
+    }
+
+    public static int getCellCount(int slices) {
+        return slices * SLICE_CELLS;
+    }
+
+    //time covered by the histogram
+    public long getWindowMillis() {
+        return sliceMillis * slices;
+    }
+
+    //negative values are counted as zero
+    public void record(long value) {
+        value = Math.max(value, 0);
+        long epoch = TimeUtils.millis() / sliceMillis;
+        int slice = (int)(epoch % slices) * SLICE_CELLS;
+        long sliceEpoch = cells.get(slice + EPOCH);
+        if(sliceEpoch != epoch){
+            if(sliceEpoch > epoch){
+                return; //recorded too late, the slice already holds a newer time
+            }
+            if(cells.compareAndSet(slice + EPOCH, sliceEpoch, epoch)){
+                clear(slice);
+            }
+        }
+
+        cells.add(slice + COUNTS + getBucket(value), 1);
+        cells.add(slice + SUM, value);
+        long max;
+        while ((max = cells.get(slice + MAX)) < value && !cells.compareAndSet(slice + MAX, max, value)){
+            //another thread has changed the max, try again
+        }
+    }
+
+    //slice is the first cell of it
+    private void clear(int slice) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            cells.set(slice + COUNTS + bucket, 0);
+        }
+        cells.set(slice + SUM, 0);
+        cells.set(slice + MAX, 0);
+    }
+
+    //sums the slices of the window into out, returns out
+    public Snapshot getSnapshot(Snapshot out) {
+        out.clear();
+        long epoch = TimeUtils.millis() / sliceMillis;
+        for (int slice = 0; slice < getCellCount(slices); slice += SLICE_CELLS) {
+            long sliceEpoch = cells.get(slice + EPOCH);
+            if(sliceEpoch > epoch || sliceEpoch <= epoch - slices){
+                continue; //expired
+            }
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                long count = cells.get(slice + COUNTS + bucket);
+                out.counts[bucket] += count;
+                out.count += count;
+            }
+            out.sum += cells.get(slice + SUM);
+            out.max = Math.max(out.max, cells.get(slice + MAX));
+        }
+        return out;
+    }
+
+    static int getBucket(long value) {
+        if(value < SUB_BUCKETS){
+            return (int)value;
+        }
+        value = Math.min(value, MAX_VALUE);
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int)(value >> shift) - SUB_BUCKETS;
+    }
+
+    //the smallest value counted in the bucket
+    public static long getBucketFrom(int bucket) {
+        if(bucket < 2 * SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long)(bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    //the biggest value counted in the bucket
+    public static long getBucketTo(int bucket) {
+        if(bucket < 2 * SUB_BUCKETS){
+            return bucket;
+        }
+        return getBucketFrom(bucket) + (1L << (bucket / SUB_BUCKETS - 1)) - 1;
+    }
+
+    //values of the whole window at the moment it's taken, can be reused
+    public static class Snapshot {
+        public final long[] counts = new long[BUCKETS];
+        public long count;
+        public long sum;
+        public long max;
+
+        public void clear() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = 0;
+            }
+            count = 0;
+            sum = 0;
+            max = 0;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double)sum / count;
+        }
+
+        //the value which percent of all values don't exceed, within the bucket precision
+        public long getPercentile(double percent) {
+            long rank = Math.max((long)Math.ceil(percent / 100 * count), 1);
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if(seen >= rank){
+                    return Math.min(getBucketTo(bucket), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package ru.grishagin.systems.patfinding;
 
 import com.badlogic.gdx.ai.pfa.Heuristic;
 
+//exact distance on an empty map without diagonal moves, matches costs of 4-connected graphs
 public class TiledManhattanDistance<N extends TiledNode<N>> implements Heuristic<N> {
 
     public TiledManhattanDistance () {
@@ -0,0 +1,19 @@
+package ru.grishagin.systems.patfinding;
+
+import com.badlogic.gdx.ai.pfa.Heuristic;
+
+//exact distance on an empty map with diagonal moves, matches costs of 8-connected graphs
+public class TiledOctileDistance<N extends TiledNode<N>> implements Heuristic<N> {
+
+    private static final float DIAGONAL_SAVING = FlatTiledConnection.DIAGONAL_COST - 2 * FlatTiledConnection.ORTHOGONAL_COST;
+
+    public TiledOctileDistance () {
+    }
+
+    @Override
+    public float estimate (N node, N endNode) {
+        int deltaX = Math.abs(endNode.x - node.x);
+        int deltaY = Math.abs(endNode.y - node.y);
+        return FlatTiledConnection.ORTHOGONAL_COST * (deltaX + deltaY) + DIAGONAL_SAVING * Math.min(deltaX, deltaY);
+    }
+}
@@ -0,0 +1,119 @@
+package ru.grishagin.systems.patfinding;
+
+//walkability of every tile packed into bits, one bit per tile.
+//Tile index is the same as in FlatTiledGraph: x * height + y
+public class WalkabilityGrid {
+
+    private final int width;
+    private final int height;
+
+    //int words instead of long ones, because longs are emulated (and slow) on GWT
+    private final int[] bits;
+
+    //incremented on every real change of walkability
+    private int version;
+
+    public WalkabilityGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.bits = new int[(width * height + 31) >>> 5];
+    }
+
+    //copy which keeps the version of the source
+    public WalkabilityGrid(WalkabilityGrid source) {
+        this.width = source.width;
+        this.height = source.height;
+        this.bits = source.bits.clone();
+        this.version = source.version;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSize() {
+        return width * height;
+    }
+
+    public int getIndex(int x, int y) {
+        return x * height + y;
+    }
+
+    public int getX(int index) {
+        return index / height;
+    }
+
+    public int getY(int index) {
+        return index % height;
+    }
+
+    public boolean isInside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    public boolean isWalkable(int index) {
+        return (bits[index >>> 5] & (1 << index)) != 0;
+    }
+
+    //tiles outside of the map are never walkable
+    public boolean isWalkable(int x, int y) {
+        return isInside(x, y) && isWalkable(getIndex(x, y));
+    }
+
+    //all tiles from one index to another inclusive, e.g. a vertical run of tiles. Whole words are checked at once
+    public boolean isRunWalkable(int fromIndex, int toIndex) {
+        return isRangeSet(bits, fromIndex, toIndex);
+    }
+
+    //returns true if walkability of the tile is really changed
+    public boolean setWalkable(int index, boolean walkable) {
+        if(isWalkable(index) == walkable){
+            return false;
+        }
+
+        bits[index >>> 5] ^= 1 << index;
+        version++;
+        return true;
+    }
+
+    //every tile becomes walkable, e.g. before the impassable ones are marked. Bits past the last tile stay clear
+    public void setAllWalkable() {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = -1;
+        }
+        int tail = getSize() & 31;
+        if(tail != 0){
+            bits[bits.length - 1] = -1 >>> (32 - tail);
+        }
+        version++;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    static boolean isRangeSet(int[] bits, int from, int to) {
+        int firstWord = from >>> 5;
+        int lastWord = to >>> 5;
+        int firstMask = -1 << from; //shift distance is taken modulo 32
+        int lastMask = -1 >>> (31 - (to & 31));
+        if(firstWord == lastWord){
+            int mask = firstMask & lastMask;
+            return (bits[firstWord] & mask) == mask;
+        }
+
+        if((bits[firstWord] & firstMask) != firstMask){
+            return false;
+        }
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            if(bits[word] != -1){
+                return false;
+            }
+        }
+        return (bits[lastWord] & lastMask) == lastMask;
+    }
+}
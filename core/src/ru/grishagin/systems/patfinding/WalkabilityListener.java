@@ -0,0 +1,7 @@
+package ru.grishagin.systems.patfinding;
+
+//notified by GridTiledGraph when a tile becomes walkable or impassable (doors, mostly)
+public interface WalkabilityListener {
+
+    void walkabilityChanged(int index, boolean walkable);
+}
@@ -0,0 +1,44 @@
+package ru.grishagin.systems.patfinding.concurrent;
+
+import ru.grishagin.systems.patfinding.LongCells;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Cells any thread may change at any time without locks.
+ *
+ * Not available on GWT (the package is excluded from the html module), LongArrayCells is used there.
+ */
+public class AtomicLongCells implements LongCells {
+
+    private final AtomicLongArray cells;
+
+    public AtomicLongCells(int size) {
+        cells = new AtomicLongArray(size);
+    }
+
+    @Override
+    public int size() {
+        return cells.length();
+    }
+
+    @Override
+    public long get(int index) {
+        return cells.get(index);
+    }
+
+    @Override
+    public void set(int index, long value) {
+        cells.set(index, value);
+    }
+
+    @Override
+    public void add(int index, long delta) {
+        cells.addAndGet(index, delta);
+    }
+
+    @Override
+    public boolean compareAndSet(int index, long expected, long value) {
+        return cells.compareAndSet(index, expected, value);
+    }
+}
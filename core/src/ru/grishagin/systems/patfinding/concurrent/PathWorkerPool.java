@@ -0,0 +1,286 @@
+package ru.grishagin.systems.patfinding.concurrent;
+
+import com.badlogic.gdx.ai.pfa.Heuristic;
+import com.badlogic.gdx.ai.pfa.PathFinder;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.TimeUtils;
+import ru.grishagin.systems.patfinding.*;
+import ru.grishagin.utils.Logger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Searches paths on worker threads.
+ * Workers never touch the game graph: each of them has its own graph and path finder built over
+ * an immutable snapshot of walkability. A new snapshot is published on every door change,
+ * workers pick it up before the next search.
+ * Found paths are handed back to the game thread in run(). A path found on an old snapshot is accepted
+ * only if all its tiles are still walkable, otherwise the request is searched again.
+ *
+ * Not available on GWT (the package is excluded from the html module), PathRequestQueue is used there.
+ */
+public class PathWorkerPool implements PathRequestProcessor, WalkabilityListener {
+
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<Result>();
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>(){
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    //game thread only
+    private GridTiledGraph graph;
+    private int pending;
+    private int staleResults;
+    private int rejectedResults;
+
+    private volatile Snapshot snapshot;
+
+    public PathWorkerPool(int threads) {
+        executor = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactory() {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "path-worker-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void init(GridTiledGraph graph, PathFinderType type) {
+        if(this.graph != graph){
+            if(this.graph != null){
+                this.graph.removeListener(this);
+            }
+            graph.addListener(this);
+            this.graph = graph;
+        }
+        snapshot = new Snapshot(graph, new WalkabilityGrid(graph.getWalkability()), type);
+    }
+
+    @Override
+    public void walkabilityChanged(int index, boolean walkable) {
+        snapshot = new Snapshot(graph, new WalkabilityGrid(graph.getWalkability()), snapshot.type);
+    }
+
+    @Override
+    public void add(PathRequest request) {
+        pending++;
+        executor.execute(new SearchTask(request, request.startNode.getIndex(), request.endNode.getIndex(), request.goal));
+    }
+
+    @Override
+    public int run(long timeToRun) {
+        long deadline = TimeUtils.nanoTime() + timeToRun;
+        int completed = 0;
+        Result result;
+        while (TimeUtils.nanoTime() < deadline && (result = results.poll()) != null){
+            if(deliver(result)){
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    //returns true if the request is done
+    private boolean deliver(Result result) {
+        PathRequest request = result.request;
+        if(result.snapshot.graph != graph){
+            pending--;
+            request.finish(false); //map has been changed
+            return true;
+        }
+        if(request.isCancelled()){
+            pending--;
+            return false;
+        }
+        //searches done again on a new snapshot add up
+        request.expandedNodes += result.expandedNodes;
+        request.searchTime += result.searchTime;
+
+        WalkabilityGrid grid = graph.getWalkability();
+        if(result.snapshot.grid.getVersion() != grid.getVersion()){
+            staleResults++;
+            if(!isValid(result, grid)){
+                rejectedResults++;
+                executor.execute(new SearchTask(request, result.start, result.end, result.goal));
+                return false;
+            }
+        }
+
+        pending--;
+        for (int i = 0; i < result.tiles.size; i++) {
+            request.path.add(graph.getNode(result.tiles.get(i)));
+        }
+        request.finish(result.found);
+        return true;
+    }
+
+    //path found on an old snapshot is still fine if nothing has been closed on its way
+    private boolean isValid(Result result, WalkabilityGrid grid) {
+        if(!result.found){
+            return false; //something may have been opened
+        }
+        for (int i = 1; i < result.tiles.size; i++) {
+            if(!grid.isWalkable(result.tiles.get(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return pending;
+    }
+
+    //results found on outdated snapshots, and how many of them had to be searched again
+    public int getStaleResults() {
+        return staleResults;
+    }
+
+    public int getRejectedResults() {
+        return rejectedResults;
+    }
+
+    @Override
+    public void dispose() {
+        if(graph != null){
+            graph.removeListener(this);
+        }
+        executor.shutdownNow();
+        Logger.info("Path workers stopped. Stale results: " + staleResults + ", searched again: " + rejectedResults);
+    }
+
+    private static class Snapshot {
+        final GridTiledGraph graph; //game graph the snapshot is taken from
+        final WalkabilityGrid grid;
+        final PathFinderType type;
+        final boolean diagonal;
+
+        Snapshot(GridTiledGraph graph, WalkabilityGrid grid, PathFinderType type) {
+            this.graph = graph;
+            this.grid = grid;
+            this.type = type;
+            this.diagonal = graph.isDiagonal();
+        }
+    }
+
+    private static class Result {
+        final PathRequest request;
+        final Snapshot snapshot;
+        final int start;
+        final int end;
+        final PathGoal goal; //immutable, so may be shared with the game thread
+        final Heuristic<GridTiledNode> heuristic; //stateless or read-only
+        final boolean bidirectional;
+        final IntArray tiles = new IntArray();
+        boolean found;
+        int expandedNodes;
+        long searchTime;
+
+        Result(PathRequest request, Snapshot snapshot, int start, int end, PathGoal goal) {
+            this.request = request;
+            this.snapshot = snapshot;
+            this.start = start;
+            this.end = end;
+            this.goal = goal;
+            this.heuristic = request.heuristic;
+            this.bidirectional = request.bidirectional;
+        }
+    }
+
+    //graph and path finder of one worker thread, brought up to date when a new snapshot is published
+    private static class Worker {
+        private Snapshot snapshot;
+        private GridTiledGraph graph;
+        private PathFinder<GridTiledNode> pathFinder;
+        private GridAStar goalSearch;
+        private BidirectionalAStarPathFinder bidirectionalSearch;
+        private final TiledSmoothableGraphPath<GridTiledNode> path = new TiledSmoothableGraphPath<GridTiledNode>();
+
+        void search(Snapshot snapshot, Result result) {
+            if(this.snapshot != snapshot){
+                update(snapshot);
+            }
+
+            if(result.goal != null){
+                result.found = goalSearch.search(result.start, result.goal, result.tiles);
+                result.expandedNodes = goalSearch.getExpandedNodes();
+                return;
+            }
+
+            path.clear();
+            PathFinder<GridTiledNode> pathFinder = result.bidirectional ? bidirectionalSearch : this.pathFinder;
+            result.found = pathFinder.searchNodePath(graph.getNode(result.start), graph.getNode(result.end), result.heuristic, path);
+            result.expandedNodes = PathFindingMetrics.getExpandedNodes(pathFinder);
+            for (int i = 0; i < path.getCount(); i++) {
+                result.tiles.add(path.get(i).getIndex());
+            }
+        }
+
+        //changed tiles are applied one by one, so path finders with precomputed data repair it instead of full rebuild
+        private void update(Snapshot snapshot) {
+            Snapshot previous = this.snapshot;
+            this.snapshot = snapshot;
+            if(previous == null || previous.graph != snapshot.graph || previous.type != snapshot.type
+                    || previous.diagonal != snapshot.diagonal){
+                graph = new GridTiledGraph(snapshot.diagonal);
+                graph.init(new WalkabilityGrid(snapshot.grid)); //own copy, snapshot must stay untouched
+                pathFinder = snapshot.type.create(graph);
+                goalSearch = new GridAStar(graph.getWalkability());
+                bidirectionalSearch = new BidirectionalAStarPathFinder(graph);
+                if(pathFinder instanceof WalkabilityListener){
+                    graph.addListener((WalkabilityListener) pathFinder);
+                }
+                return;
+            }
+
+            WalkabilityGrid grid = graph.getWalkability();
+            for (int i = 0; i < grid.getSize(); i++) {
+                boolean walkable = snapshot.grid.isWalkable(i);
+                if(grid.isWalkable(i) != walkable){
+                    graph.changeNodeType(i, walkable ? TileNodeType.NORMAL : TileNodeType.IMPASSABLE);
+                }
+            }
+        }
+    }
+
+    //only indexes are taken from the request, its nodes belong to the game graph
+    private class SearchTask implements Runnable {
+        private final PathRequest request;
+        private final int start;
+        private final int end;
+        private final PathGoal goal;
+
+        SearchTask(PathRequest request, int start, int end, PathGoal goal) {
+            this.request = request;
+            this.start = start;
+            this.end = end;
+            this.goal = goal;
+        }
+
+        @Override
+        public void run() {
+            Result result = new Result(request, snapshot, start, end, goal);
+            long startTime = TimeUtils.nanoTime();
+            try {
+                workers.get().search(result.snapshot, result);
+            } catch (RuntimeException e){
+                Logger.warning("Path search failed: " + e);
+                result.found = false;
+                result.tiles.clear();
+            }
+            result.searchTime = TimeUtils.nanoTime() - startTime;
+            results.add(result);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package ru.grishagin.systems.scheduler;
+
+import com.badlogic.ashley.core.Component;
+import com.badlogic.ashley.core.ComponentType;
+import com.badlogic.ashley.core.Entity;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Bits;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/*
+ * Structural changes of entities recorded instead of being made at once: components added and removed.
+ * Systems running together with others can't change entities structure, families are shared by all of them.
+ * The scheduler plays the records back in the order they were made after the whole wave is done.
+ *
+ * A buffer belongs to one system, or to one part of a system split by ParallelIteratingSystem, and is filled
+ * from one thread at a time. Buffers of the parts are passed to the buffer of their system in the order of the parts.
+ * Systems not run by the scheduler get the immediate one, their changes are deferred by the engine itself.
+ *
+ * Playing coalesces the records: only the last one for each component of an entity is made, and removing a component
+ * the entity doesn't have is skipped. Every change made costs the engine a family update of the entity,
+ * so a component added and removed during one tick costs nothing at all. Counters of made and skipped changes
+ * are kept until resetCounters(), the scheduler resets them every tick.
+ */
+public class CommandBuffer {
+
+    public static final CommandBuffer IMMEDIATE = new CommandBuffer(true);
+
+    private static final int ADD_COMPONENT = 0;
+    private static final int REMOVE_COMPONENT = 1;
+
+    private final boolean immediate;
+    private final IntArray commands = new IntArray();
+    private final Array<Entity> entities = new Array<Entity>();
+    private final IntArray types = new IntArray(); //component type index
+    private final Array<Object> arguments = new Array<Object>(); //component or its class
+
+    //for coalescing
+    private final ObjectMap<Entity, Bits> playedTypes = new ObjectMap<Entity, Bits>();
+    private final Array<Bits> freeBits = new Array<Bits>();
+    private final Bits skipped = new Bits();
+
+    private int added;
+    private int removed;
+    private int coalesced;
+
+    public CommandBuffer() {
+        this(false);
+    }
+
+    private CommandBuffer(boolean immediate) {
+        this.immediate = immediate;
+    }
+
+    public void add(Entity entity, Component component) {
+        if(immediate){
+            entity.add(component);
+        } else {
+            record(ADD_COMPONENT, entity, ComponentType.getIndexFor(component.getClass()), component);
+        }
+    }
+
+    public void remove(Entity entity, Class<? extends Component> componentClass) {
+        if(immediate){
+            entity.remove(componentClass);
+        } else {
+            record(REMOVE_COMPONENT, entity, ComponentType.getIndexFor(componentClass), componentClass);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void record(int command, Entity entity, int type, Object argument) {
+        if(immediate){
+            if(command == ADD_COMPONENT){
+                entity.add((Component)argument);
+            } else {
+                entity.remove((Class<? extends Component>)argument);
+            }
+            return;
+        }
+        commands.add(command);
+        entities.add(entity);
+        types.add(type);
+        arguments.add(argument);
+    }
+
+    public int size() {
+        return commands.size;
+    }
+
+    public void play() {
+        play(IMMEDIATE);
+    }
+
+    //records are moved to the target as they are, the immediate one makes them coalesced
+    public void play(CommandBuffer target) {
+        if(target.immediate){
+            coalesce();
+        }
+        for (int i = 0; i < commands.size; i++) {
+            if(target.immediate){
+                if(skipped.get(i)){
+                    continue;
+                } else if(commands.get(i) == ADD_COMPONENT){
+                    added++;
+                } else {
+                    removed++;
+                }
+            }
+            target.record(commands.get(i), entities.get(i), types.get(i), arguments.get(i));
+        }
+        clear();
+    }
+
+    //the record for the same component of the same entity made later wins, so the buffer is walked from the end
+    @SuppressWarnings("unchecked")
+    private void coalesce() {
+        skipped.clear();
+        for (int i = commands.size - 1; i >= 0; i--) {
+            Entity entity = entities.get(i);
+            int type = types.get(i);
+            Bits played = playedTypes.get(entity);
+            if(played == null){
+                played = freeBits.size > 0 ? freeBits.pop() : new Bits();
+                playedTypes.put(entity, played);
+            }
+            if(played.getAndSet(type)
+                    || commands.get(i) == REMOVE_COMPONENT && entity.getComponent((Class<? extends Component>)arguments.get(i)) == null){
+                skipped.set(i);
+                coalesced++;
+            }
+        }
+        for (Bits played : playedTypes.values()) {
+            played.clear();
+            freeBits.add(played);
+        }
+        playedTypes.clear();
+    }
+
+    public void clear() {
+        commands.clear();
+        entities.clear();
+        types.clear();
+        arguments.clear();
+    }
+
+    //components added by the played records
+    public int getAdded() {
+        return added;
+    }
+
+    //components removed by the played records
+    public int getRemoved() {
+        return removed;
+    }
+
+    //records not played: overridden by a later one for the same component, or removing a missing component
+    public int getCoalesced() {
+        return coalesced;
+    }
+
+    public void resetCounters() {
+        added = 0;
+        removed = 0;
+        coalesced = 0;
+    }
+}
@@ -0,0 +1,137 @@
+package ru.grishagin.systems.scheduler;
+
+import com.badlogic.ashley.core.Engine;
+import com.badlogic.ashley.core.Entity;
+import com.badlogic.ashley.core.EntitySystem;
+import com.badlogic.ashley.core.Family;
+import com.badlogic.ashley.utils.ImmutableArray;
+import com.badlogic.gdx.utils.Array;
+
+/*
+ * Like IteratingSystem, but entities of the family are split in chunks, and the executor of the scheduler
+ * may process the chunks on several threads at the same time.
+ * processEntity() touches only the entity and the scratch of its chunk: temporary objects, and commands instead of
+ * adding and removing components. Entities which need anything shared are deferred, processDeferred() gets them later.
+ *
+ * After all chunks are done, on the calling thread and in the order of the chunks, the commands are passed
+ * to the buffer of the system, endChunk() gets each scratch and the deferred entities are processed.
+ * So the result is the same for any number of threads. Without a scheduler all of it runs on the calling thread
+ * and the commands are made at once, the engine defers them itself.
+ */
+public abstract class ParallelIteratingSystem<S extends ParallelIteratingSystem.Scratch> extends EntitySystem implements ScheduledSystem {
+
+    public static final int MIN_CHUNK = 64; //entities, a smaller chunk costs more to hand out than to process
+    private static final int CHUNKS_PER_THREAD = 4; //a thread with slow entities is helped by others taking the rest
+
+    private final Family family;
+    private ImmutableArray<Entity> entities;
+    private SystemAccess access; //null if the system is not scheduled
+    private final Array<S> scratches = new Array<S>();
+    private final ChunkTask chunkTask = new ChunkTask();
+
+    public ParallelIteratingSystem(Family family) {
+        this(family, 0);
+    }
+
+    public ParallelIteratingSystem(Family family, int priority) {
+        super(priority);
+        this.family = family;
+    }
+
+    //subclasses declare their components and call this one
+    @Override
+    public void declareAccess(SystemAccess access) {
+        this.access = access;
+    }
+
+    @Override
+    public void addedToEngine(Engine engine) {
+        entities = engine.getEntitiesFor(family);
+    }
+
+    @Override
+    public void removedFromEngine(Engine engine) {
+        entities = null;
+    }
+
+    public ImmutableArray<Entity> getEntities() {
+        return entities;
+    }
+
+    public Family getFamily() {
+        return family;
+    }
+
+    //for structural changes made outside of chunks: in update() and processDeferred()
+    protected CommandBuffer getCommands() {
+        return access != null ? access.getCommands() : CommandBuffer.IMMEDIATE;
+    }
+
+    @Override
+    public void update(float deltaTime) {
+        int threads = access != null ? access.getExecutor().getThreads() : 1;
+        int size = entities.size();
+        int chunks = threads > 1 ? Math.max(Math.min(size / MIN_CHUNK, threads * CHUNKS_PER_THREAD), 1) : 1;
+        while (scratches.size < chunks){
+            scratches.add(newScratch());
+        }
+
+        chunkTask.size = size;
+        chunkTask.chunks = chunks;
+        chunkTask.deltaTime = deltaTime;
+        if(chunks > 1){
+            access.getExecutor().run(chunks, chunkTask);
+        } else {
+            chunkTask.run(0);
+        }
+
+        CommandBuffer commands = getCommands();
+        for (int i = 0; i < chunks; i++) {
+            S scratch = scratches.get(i);
+            scratch.commands.play(commands);
+            endChunk(scratch);
+            for (int j = 0; j < scratch.deferred.size; j++) {
+                processDeferred(scratch.deferred.get(j), deltaTime);
+            }
+            scratch.deferred.clear();
+        }
+    }
+
+    protected abstract S newScratch();
+
+    //any thread, see the class comment
+    protected abstract void processEntity(Entity entity, float deltaTime, S scratch);
+
+    //calling thread, for the entities passed to Scratch.defer()
+    protected void processDeferred(Entity entity, float deltaTime) {
+    }
+
+    //calling thread, after the commands of the chunk are passed and before its deferred entities
+    protected void endChunk(S scratch) {
+    }
+
+    private class ChunkTask implements SystemExecutor.Task {
+        private int size;
+        private int chunks;
+        private float deltaTime;
+
+        @Override
+        public void run(int part) {
+            S scratch = scratches.get(part);
+            int to = (int)((long)size * (part + 1) / chunks);
+            for (int i = (int)((long)size * part / chunks); i < to; i++) {
+                processEntity(entities.get(i), deltaTime, scratch);
+            }
+        }
+    }
+
+    //state of one chunk, used by one thread at a time. Subclasses add their temporary objects
+    public static class Scratch {
+        public final CommandBuffer commands = new CommandBuffer();
+        final Array<Entity> deferred = new Array<Entity>();
+
+        public void defer(Entity entity) {
+            deferred.add(entity);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ru.grishagin.systems.scheduler;
+
+//system which tells SystemScheduler what it touches, so it may run together with others. Systems without it run alone
+public interface ScheduledSystem {
+
+    //called once when the scheduler takes the system over
+    void declareAccess(SystemAccess access);
+}
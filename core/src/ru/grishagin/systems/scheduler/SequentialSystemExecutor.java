@@ -0,0 +1,31 @@
+package ru.grishagin.systems.scheduler;
+
+import com.badlogic.ashley.core.EntitySystem;
+import com.badlogic.gdx.utils.Array;
+
+//one system after another on the game thread. Default one, and the only one on GWT
+public class SequentialSystemExecutor implements SystemExecutor {
+
+    @Override
+    public void run(Array<EntitySystem> systems, float deltaTime) {
+        for (int i = 0; i < systems.size; i++) {
+            systems.get(i).update(deltaTime);
+        }
+    }
+
+    @Override
+    public void run(int parts, Task task) {
+        for (int part = 0; part < parts; part++) {
+            task.run(part);
+        }
+    }
+
+    @Override
+    public int getThreads() {
+        return 1;
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
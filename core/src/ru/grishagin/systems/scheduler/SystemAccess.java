@@ -0,0 +1,65 @@
+package ru.grishagin.systems.scheduler;
+
+import com.badlogic.ashley.core.Component;
+import com.badlogic.ashley.core.ComponentType;
+import com.badlogic.gdx.utils.Bits;
+
+/*
+ * What a system touches during its update: components it reads and writes, filled by ScheduledSystem.declareAccess().
+ * Two systems conflict if one of them writes what the other reads or writes, conflicting ones keep the engine order.
+ * Systems which change entities structure directly, send messages or touch anything else shared must be exclusive,
+ * they run alone on the game thread. Structural changes can be recorded in getCommands() instead.
+ */
+public class SystemAccess {
+
+    private final Bits reads = new Bits();
+    private final Bits writes = new Bits();
+    private boolean exclusive;
+    private final CommandBuffer commands = new CommandBuffer();
+    private final SystemScheduler scheduler;
+
+    public SystemAccess(SystemScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @SafeVarargs
+    public final SystemAccess reads(Class<? extends Component>... componentClasses) {
+        for (Class<? extends Component> componentClass : componentClasses) {
+            reads.set(ComponentType.getIndexFor(componentClass));
+        }
+        return this;
+    }
+
+    @SafeVarargs
+    public final SystemAccess writes(Class<? extends Component>... componentClasses) {
+        for (Class<? extends Component> componentClass : componentClasses) {
+            writes.set(ComponentType.getIndexFor(componentClass));
+        }
+        return this;
+    }
+
+    public SystemAccess exclusive() {
+        exclusive = true;
+        return this;
+    }
+
+    public boolean isExclusive() {
+        return exclusive;
+    }
+
+    //played back by the scheduler after the wave of the system
+    public CommandBuffer getCommands() {
+        return commands;
+    }
+
+    //for the work a system splits itself, the scheduler may get another executor later
+    public SystemExecutor getExecutor() {
+        return scheduler.getExecutor();
+    }
+
+    public boolean conflicts(SystemAccess other) {
+        return exclusive || other.exclusive
+                || writes.intersects(other.reads) || writes.intersects(other.writes)
+                || other.writes.intersects(reads);
+    }
+}
@@ -0,0 +1,28 @@
+package ru.grishagin.systems.scheduler;
+
+import com.badlogic.ashley.core.EntitySystem;
+import com.badlogic.gdx.utils.Array;
+
+/*
+ * Runs systems of one wave of SystemScheduler, which don't touch the same components,
+ * and parts of a single system, see ParallelIteratingSystem. Calls come from the game thread,
+ * and from the threads of the executor itself when a system of a wave splits its work.
+ */
+public interface SystemExecutor {
+
+    //returns when all of the systems are updated
+    void run(Array<EntitySystem> systems, float deltaTime);
+
+    //runs task for each part from 0 to parts - 1 and returns when all of them are done
+    void run(int parts, Task task);
+
+    //how many parts may really run at the same time
+    int getThreads();
+
+    void dispose();
+
+    //a part is run by one thread, different parts may run at the same time
+    interface Task {
+        void run(int part);
+    }
+}
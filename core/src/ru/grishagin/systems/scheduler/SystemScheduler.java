@@ -0,0 +1,184 @@
+package ru.grishagin.systems.scheduler;
+
+import com.badlogic.ashley.core.Engine;
+import com.badlogic.ashley.core.EntitySystem;
+import com.badlogic.ashley.utils.ImmutableArray;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+/*
+ * Updates the systems of the engine in waves instead of one by one. Each system waits for the earlier ones it conflicts with
+ * (see SystemAccess), so a system gets the wave after the latest of them. Systems of one wave are given to the executor
+ * together, a thread pool may run them at the same time.
+ *
+ * The scheduler takes the systems over: they are switched off in the engine, and the engine updates only the wave system,
+ * once for each wave. So the engine defers structural changes during a wave and makes them right after it, together
+ * with the command buffers of the wave. That's the sync point: the next wave sees all changes of the previous ones.
+ * Systems added to the engine later are taken over on the next update and the waves are rebuilt.
+ * Call update() instead of Engine.update().
+ *
+ * Structural changes of the last update are counted from the command buffers: made and coalesced away ones.
+ * Changes systems make directly on entities are not counted.
+ */
+public class SystemScheduler {
+
+    private final Engine engine;
+    private SystemExecutor executor = new SequentialSystemExecutor();
+    private final WaveSystem waveSystem = new WaveSystem();
+
+    //in the engine order
+    private final Array<EntitySystem> systems = new Array<EntitySystem>();
+    private final Array<SystemAccess> accesses = new Array<SystemAccess>();
+    private final IntArray systemWaves = new IntArray();
+    private final Array<Array<EntitySystem>> waves = new Array<Array<EntitySystem>>();
+    private final Array<Array<SystemAccess>> waveAccesses = new Array<Array<SystemAccess>>();
+    private int waveCount;
+
+    public SystemScheduler(Engine engine) {
+        this.engine = engine;
+        engine.addSystem(waveSystem);
+    }
+
+    public void setExecutor(SystemExecutor executor) {
+        this.executor.dispose();
+        this.executor = executor;
+    }
+
+    public SystemExecutor getExecutor() {
+        return executor;
+    }
+
+    public int getWaveCount() {
+        return waveCount;
+    }
+
+    public Array<EntitySystem> getWave(int wave) {
+        return waves.get(wave);
+    }
+
+    public void update(float deltaTime) {
+        if(isChanged()){
+            build();
+        }
+        for (int i = 0; i < accesses.size; i++) {
+            accesses.get(i).getCommands().resetCounters();
+        }
+        for (int i = 0; i < waveCount; i++) {
+            waveSystem.wave = i;
+            engine.update(deltaTime);
+        }
+    }
+
+    //components added by the command buffers during the last update
+    public int getAddedComponents() {
+        int added = 0;
+        for (int i = 0; i < accesses.size; i++) {
+            added += accesses.get(i).getCommands().getAdded();
+        }
+        return added;
+    }
+
+    //components removed by the command buffers during the last update
+    public int getRemovedComponents() {
+        int removed = 0;
+        for (int i = 0; i < accesses.size; i++) {
+            removed += accesses.get(i).getCommands().getRemoved();
+        }
+        return removed;
+    }
+
+    //records of the last update which changed nothing, see CommandBuffer
+    public int getCoalescedCommands() {
+        int coalesced = 0;
+        for (int i = 0; i < accesses.size; i++) {
+            coalesced += accesses.get(i).getCommands().getCoalesced();
+        }
+        return coalesced;
+    }
+
+    private boolean isChanged() {
+        ImmutableArray<EntitySystem> engineSystems = engine.getSystems();
+        if(engineSystems.size() != systems.size + 1){
+            return true;
+        }
+        int index = 0;
+        for (int i = 0; i < engineSystems.size(); i++) {
+            EntitySystem system = engineSystems.get(i);
+            if(system != waveSystem && systems.get(index++) != system){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //DAG of the conflicts, each system goes to the wave after the latest earlier system it conflicts with
+    private void build() {
+        Array<EntitySystem> oldSystems = new Array<EntitySystem>(systems);
+        Array<SystemAccess> oldAccesses = new Array<SystemAccess>(accesses);
+        systems.clear();
+        accesses.clear();
+        systemWaves.clear();
+        waveCount = 0;
+        for (EntitySystem system : engine.getSystems()) {
+            if(system == waveSystem){
+                continue;
+            }
+            int old = oldSystems.indexOf(system, true);
+            SystemAccess access = old >= 0 ? oldAccesses.get(old) : takeOver(system);
+
+            int wave = 0;
+            for (int i = 0; i < systems.size; i++) {
+                if(access.conflicts(accesses.get(i))){
+                    wave = Math.max(wave, systemWaves.get(i) + 1);
+                }
+            }
+            systems.add(system);
+            accesses.add(access);
+            systemWaves.add(wave);
+            waveCount = Math.max(waveCount, wave + 1);
+        }
+
+        while (waves.size < waveCount){
+            waves.add(new Array<EntitySystem>());
+            waveAccesses.add(new Array<SystemAccess>());
+        }
+        for (int i = 0; i < waves.size; i++) {
+            waves.get(i).clear();
+            waveAccesses.get(i).clear();
+        }
+        for (int i = 0; i < systems.size; i++) {
+            waves.get(systemWaves.get(i)).add(systems.get(i));
+            waveAccesses.get(systemWaves.get(i)).add(accesses.get(i));
+        }
+    }
+
+    private SystemAccess takeOver(EntitySystem system) {
+        SystemAccess access = new SystemAccess(this);
+        if(system instanceof ScheduledSystem){
+            ((ScheduledSystem)system).declareAccess(access);
+        } else {
+            access.exclusive();
+        }
+        system.setProcessing(false);
+        return access;
+    }
+
+    //the only system the engine updates itself
+    private class WaveSystem extends EntitySystem {
+        private int wave;
+
+        @Override
+        public void update(float deltaTime) {
+            Array<EntitySystem> systems = waves.get(wave);
+            if(systems.size == 1){
+                systems.first().update(deltaTime); //exclusive ones are always alone and stay on the game thread
+            } else {
+                executor.run(systems, deltaTime);
+            }
+            Array<SystemAccess> accesses = waveAccesses.get(wave);
+            for (int i = 0; i < accesses.size; i++) {
+                accesses.get(i).getCommands().play();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ru.grishagin.systems.scheduler.concurrent;
+
+import com.badlogic.ashley.core.EntitySystem;
+import com.badlogic.gdx.utils.Array;
+import ru.grishagin.systems.scheduler.SystemExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Runs systems of a wave and parts of a system at the same time on a fork/join pool,
+ * the calling thread takes the first one itself. Parts may be split from inside of a wave:
+ * a pool thread waiting for its parts runs other tasks meanwhile instead of blocking.
+ * An exception of any system or part is thrown from run() after all of them are done.
+ *
+ * Not available on GWT (the package is excluded from the html module), SequentialSystemExecutor is used there.
+ */
+public class ForkJoinSystemExecutor implements SystemExecutor {
+
+    private final ForkJoinPool pool;
+    private final int threads;
+    private final Array<PartTask> freeTasks = new Array<PartTask>(); //shared by all callers
+    private final SystemsTask systemsTask = new SystemsTask(); //game thread only
+
+    //threads of the pool, the calling thread works too
+    public ForkJoinSystemExecutor(int threads) {
+        pool = new ForkJoinPool(Math.max(threads, 1));
+        this.threads = Math.max(threads, 1) + 1;
+    }
+
+    @Override
+    public void run(Array<EntitySystem> systems, float deltaTime) {
+        systemsTask.systems = systems;
+        systemsTask.deltaTime = deltaTime;
+        try {
+            run(systems.size, systemsTask);
+        } finally {
+            systemsTask.systems = null;
+        }
+    }
+
+    @Override
+    public void run(int parts, Task task) {
+        PartTask tasks = obtain(parts - 1);
+        boolean inPool = ForkJoinTask.inForkJoinPool();
+        int part = 1;
+        for (PartTask partTask = tasks; partTask != null; partTask = partTask.next) {
+            partTask.task = task;
+            partTask.part = part++;
+            if(inPool){
+                partTask.fork();
+            } else {
+                pool.execute(partTask);
+            }
+        }
+
+        RuntimeException exception = null;
+        try {
+            if(parts > 0){
+                task.run(0);
+            }
+        } catch (RuntimeException e){
+            exception = e;
+        }
+        for (PartTask partTask = tasks; partTask != null; partTask = partTask.next) {
+            try {
+                partTask.join();
+            } catch (RuntimeException e){
+                if(exception == null){
+                    exception = e;
+                }
+            }
+            partTask.task = null;
+        }
+        free(tasks);
+        if(exception != null){
+            throw exception;
+        }
+    }
+
+    //tasks are linked by next, so callers on different threads get their lists without allocating. Null if count <= 0
+    private PartTask obtain(int count) {
+        PartTask tasks = null;
+        synchronized (freeTasks) {
+            for (; count > 0 && freeTasks.size > 0; count--) {
+                PartTask task = freeTasks.pop();
+                task.next = tasks;
+                tasks = task;
+            }
+        }
+        for (; count > 0; count--) {
+            PartTask task = new PartTask();
+            task.next = tasks;
+            tasks = task;
+        }
+        for (PartTask task = tasks; task != null; task = task.next) {
+            task.reinitialize();
+        }
+        return tasks;
+    }
+
+    private void free(PartTask tasks) {
+        synchronized (freeTasks) {
+            for (PartTask task = tasks; task != null; task = task.next) {
+                freeTasks.add(task);
+            }
+        }
+    }
+
+    @Override
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public void dispose() {
+        pool.shutdown();
+    }
+
+    private static class PartTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Task task;
+        private int part;
+        private PartTask next; //in the list of the same run() call
+
+        @Override
+        protected void compute() {
+            task.run(part);
+        }
+    }
+
+    private static class SystemsTask implements Task {
+        private Array<EntitySystem> systems;
+        private float deltaTime;
+
+        @Override
+        public void run(int part) {
+            systems.get(part).update(deltaTime);
+        }
+    }
+}
@@ -7,6 +7,8 @@ public class Logger {
 
     //public static final Logger instance = new Logger();
 
+    private static boolean infoEnabled = true; //warnings are always printed
+
     private Logger(){
     }
 
@@ -22,8 +24,15 @@ public class Logger {
         }
     }
 
+    //benchmarks and soak tests turn info off, printing it costs more than what they measure
+    public static void setInfoEnabled(boolean enabled){
+        infoEnabled = enabled;
+    }
+
     public static void info(String message){
-        System.out.println(message);
+        if(infoEnabled){
+            System.out.println(message);
+        }
     }
 
     public static void info(Entity entity, String message){
@@ -30,6 +30,7 @@ public class ExtendedIsometricTiledMapRenderer extends IsometricTiledMapRenderer
     private DepthComparator<Entity> comparator;
 
     private List<Entity> spriteEntities = new ArrayList<>();
+    private float alpha = 1; //entities are drawn between their previous and current positions
 
     public ExtendedIsometricTiledMapRenderer(TiledMap map) {
         super(map);
@@ -41,6 +42,10 @@ public class ExtendedIsometricTiledMapRenderer extends IsometricTiledMapRenderer
         Collections.sort(this.spriteEntities, comparator);
     }
 
+    public void setAlpha(float alpha) {
+        this.alpha = alpha;
+    }
+
     @Override
     public void render() {
         beginRender();
@@ -62,8 +67,8 @@ public class ExtendedIsometricTiledMapRenderer extends IsometricTiledMapRenderer
     private void drawSprite(SpriteComponent spriteComponent, PositionComponent position, ShaderComponent shaderComponent){
         int tileHeight = (int)map.getProperties().get(TILE_HEIGHT);
         Vector2 renderPosition = new Vector2();
-        float x = position.x;
-        float y = position.y;
+        float x = position.getInterpolatedX(alpha);
+        float y = position.getInterpolatedY(alpha);
         float posY = - x * tileHeight;
         float posX =  y * tileHeight;
         renderPosition.x = (posX - posY);
@@ -0,0 +1,61 @@
+package ru.grishagin.view;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import ru.grishagin.systems.patfinding.PathFindingMetrics;
+import ru.grishagin.systems.patfinding.RollingHistogram;
+import ru.grishagin.utils.Logger;
+
+//debug view: costs of path queries over the last seconds, and their dump to a CSV file
+public class PathFindingOverlay {
+
+    public static final String CSV_FILE = "pathfinding-metrics.csv"; //local storage
+
+    private final RollingHistogram.Snapshot snapshot = new RollingHistogram.Snapshot();
+
+    public void drawStatistics(SpriteBatch batch, BitmapFont font, PathFindingMetrics metrics) {
+        float y = Gdx.graphics.getHeight() - 10;
+        font.draw(batch, "Path queries, last " + metrics.getExpandedNodes().getWindowMillis() / 1000 + " s", 10, y);
+        y -= font.getLineHeight();
+        y = drawLine(batch, font, "Expanded nodes", metrics.getExpandedNodes(), 1, y);
+        y = drawLine(batch, font, "Search time, us", metrics.getSearchTime(), 1000, y);
+        y = drawLine(batch, font, "Latency, ms", metrics.getLatency(), 1000000, y);
+        y = drawLine(batch, font, "Path length", metrics.getPathLength(), 1, y);
+        y = drawLine(batch, font, "Cache hits, length", metrics.getCacheHits(), 1, y);
+        y = drawLine(batch, font, "Failures, expanded", metrics.getFailures(), 1, y);
+        drawLine(batch, font, "Cooperative plans, expanded", metrics.getPlannedNodes(), 1, y);
+    }
+
+    //values are divided by the unit
+    private float drawLine(SpriteBatch batch, BitmapFont font, String name, RollingHistogram histogram, long unit, float y) {
+        histogram.getSnapshot(snapshot);
+        font.draw(batch, name + ": " + snapshot.count
+                + ", mean " + Math.round(snapshot.getMean() / unit)
+                + ", p50 " + snapshot.getPercentile(50) / unit
+                + ", p95 " + snapshot.getPercentile(95) / unit
+                + ", p99 " + snapshot.getPercentile(99) / unit
+                + ", max " + snapshot.max / unit, 10, y);
+        return y - font.getLineHeight();
+    }
+
+    //each dump is appended, so the file keeps all of them. Local files are not available on every platform
+    public void dump(PathFindingMetrics metrics) {
+        if(Gdx.app.getType() == Application.ApplicationType.WebGL){
+            Logger.warning("Path finding metrics are not saved: no local files in the browser");
+            return;
+        }
+        try {
+            FileHandle file = Gdx.files.local(CSV_FILE);
+            StringBuilder csv = new StringBuilder();
+            metrics.writeCsv(csv, !file.exists());
+            file.writeString(csv.toString(), true);
+            Logger.info("Path finding metrics are saved to " + file.path());
+        } catch (GdxRuntimeException e){
+            Logger.warning("Path finding metrics are not saved: " + e.getMessage());
+        }
+    }
+}
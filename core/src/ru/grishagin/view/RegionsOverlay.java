@@ -0,0 +1,78 @@
+package ru.grishagin.view;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import ru.grishagin.systems.patfinding.ConnectedRegions;
+import ru.grishagin.systems.patfinding.WalkabilityGrid;
+
+//debug view: every connected region of walkable tiles has its own color
+public class RegionsOverlay {
+
+    private static final float GOLDEN_ANGLE = 137.508f; //neighbouring labels get distant hues
+    private static final float ALPHA = 0.35f;
+
+    private final ShapeRenderer shapeRenderer = new ShapeRenderer();
+    private final Color color = new Color();
+    private final int tileHeight;
+
+    public RegionsOverlay(int tileHeight) {
+        this.tileHeight = tileHeight;
+    }
+
+    public void draw(OrthographicCamera camera, ConnectedRegions regions, WalkabilityGrid walkability) {
+        Gdx.gl.glEnable(GL20.GL_BLEND);
+        Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+        shapeRenderer.setProjectionMatrix(camera.combined);
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+        for (int x = 0; x < walkability.getWidth(); x++) {
+            for (int y = 0; y < walkability.getHeight(); y++) {
+                int label = regions.getLabel(walkability.getIndex(x, y));
+                if(label != ConnectedRegions.NO_REGION){
+                    color.fromHsv((label * GOLDEN_ANGLE) % 360, 0.8f, 1f);
+                    color.a = ALPHA;
+                    shapeRenderer.setColor(color);
+                    drawTile(x, y);
+                }
+            }
+        }
+        shapeRenderer.end();
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+    }
+
+    public void drawStatistics(SpriteBatch batch, BitmapFont font, ConnectedRegions regions) {
+        font.draw(batch, "Regions: " + regions.getRegionCount()
+                + ", rejected queries: " + regions.getRejectedQueries() + "/" + regions.getQueries()
+                + ", merges: " + regions.getMerges() + ", splits: " + regions.getSplits(), 10, 20);
+    }
+
+    //tile is a diamond between its corners, see InputHandler.onClick() for the reverse conversion
+    private void drawTile(int x, int y) {
+        float leftX = getWorldX(x, y);
+        float leftY = getWorldY(x, y);
+        float topX = getWorldX(x, y + 1);
+        float topY = getWorldY(x, y + 1);
+        float rightX = getWorldX(x + 1, y + 1);
+        float rightY = getWorldY(x + 1, y + 1);
+        float bottomX = getWorldX(x + 1, y);
+        float bottomY = getWorldY(x + 1, y);
+        shapeRenderer.triangle(leftX, leftY, topX, topY, rightX, rightY);
+        shapeRenderer.triangle(leftX, leftY, rightX, rightY, bottomX, bottomY);
+    }
+
+    private float getWorldX(int x, int y) {
+        return (x + y) * tileHeight;
+    }
+
+    private float getWorldY(int x, int y) {
+        return (y - x) * tileHeight / 2f + tileHeight / 2f;
+    }
+
+    public void dispose() {
+        shapeRenderer.dispose();
+    }
+}
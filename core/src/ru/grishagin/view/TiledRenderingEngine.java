@@ -5,6 +5,7 @@ import com.badlogic.ashley.core.Family;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.maps.tiled.TiledMap;
 import ru.grishagin.components.SpriteComponent;
+import ru.grishagin.model.GameModel;
 
 public class TiledRenderingEngine{
 
@@ -43,6 +44,7 @@ public class TiledRenderingEngine{
     public void draw(OrthographicCamera camera){
         renderer.setView(camera);
         renderer.setSpriteEntities(engine.getEntitiesFor(Family.all(SpriteComponent.class).get()));
+        renderer.setAlpha(GameModel.instance.clock.getAlpha());
         renderer.render();
     }
 }
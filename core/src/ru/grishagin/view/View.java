@@ -1,6 +1,7 @@
 package ru.grishagin.view;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
@@ -9,6 +10,7 @@ import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
 import ru.grishagin.model.InputHandler;
 import ru.grishagin.model.GameModel;
+import ru.grishagin.systems.MovementSystem;
 import ru.grishagin.utils.UIManager;
 
 public class View{
@@ -18,6 +20,10 @@ public class View{
     private BitmapFont font;
     private SpriteBatch batch;
     private MapInputController controller;
+    private RegionsOverlay regionsOverlay;
+    private boolean showRegions;
+    private PathFindingOverlay pathFindingOverlay;
+    private boolean showPathFinding;
 
     public View(){
 
@@ -32,6 +38,9 @@ public class View{
         controller = new MapInputController(camera, map, new InputHandler(GameModel.instance.engine, map));
         controller.putInMapBounds();
 
+        regionsOverlay = new RegionsOverlay(map.getTileHeight());
+        pathFindingOverlay = new PathFindingOverlay();
+
         UIManager.instance.getInputMultiplexer().addProcessor(controller);
         Gdx.input.setInputProcessor(UIManager.instance.getInputMultiplexer());
     }
@@ -48,8 +57,30 @@ public class View{
         map.draw(camera);
         //persView.draw(5);
 
+        //debug: F2 shows connected regions
+        if(Gdx.input.isKeyJustPressed(Input.Keys.F2)){
+            showRegions = !showRegions;
+        }
+        //F3 shows path finding costs, F4 saves them to CSV
+        if(Gdx.input.isKeyJustPressed(Input.Keys.F3)){
+            showPathFinding = !showPathFinding;
+        }
+        MovementSystem movementSystem = GameModel.instance.movementSystem;
+        if(Gdx.input.isKeyJustPressed(Input.Keys.F4)){
+            pathFindingOverlay.dump(movementSystem.getMetrics());
+        }
+        if(showRegions){
+            regionsOverlay.draw(camera, movementSystem.getRegions(), movementSystem.getGraph().getWalkability());
+        }
+
         batch.begin();
         //font.draw(batch, "FPS: " + Gdx.graphics.getFramesPerSecond(), 10, 20);
+        if(showRegions){
+            regionsOverlay.drawStatistics(batch, font, movementSystem.getRegions());
+        }
+        if(showPathFinding){
+            pathFindingOverlay.drawStatistics(batch, font, movementSystem.getMetrics());
+        }
         batch.end();
     }
 
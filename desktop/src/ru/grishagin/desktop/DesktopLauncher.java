@@ -4,12 +4,16 @@ import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplicationConfiguration;
 import com.badlogic.gdx.tools.texturepacker.TexturePacker;
 import ru.grishagin.Game;
+import ru.grishagin.systems.patfinding.concurrent.PathWorkerPool;
+import ru.grishagin.systems.scheduler.concurrent.ForkJoinSystemExecutor;
 
 public class DesktopLauncher {
 	public static void main (String[] arg) {
 		LwjglApplicationConfiguration config = new LwjglApplicationConfiguration();
 		config.title = "King of the Dump";
-		new LwjglApplication(new Game(), config);
+		//one core is left for the render thread
+		int pathWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		new LwjglApplication(new Game(new PathWorkerPool(pathWorkers), new ForkJoinSystemExecutor(pathWorkers)), config);
 
 		String inputDir = "tmp_sources";
 		String outputDir = "tiles";
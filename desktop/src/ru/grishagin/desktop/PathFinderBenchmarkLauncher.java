@@ -0,0 +1,44 @@
+package ru.grishagin.desktop;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
+import com.badlogic.gdx.backends.lwjgl.LwjglApplicationConfiguration;
+import com.badlogic.gdx.maps.tiled.TmxMapLoader;
+import ru.grishagin.model.map.TiledBasedMap;
+import ru.grishagin.systems.patfinding.GridTiledGraph;
+import ru.grishagin.systems.patfinding.LandmarkTable;
+import ru.grishagin.systems.patfinding.PathFinderBenchmark;
+import ru.grishagin.systems.patfinding.PathFinderType;
+
+//compares path finders on the shipped maps. Run with "gradlew desktop:benchmark"
+public class PathFinderBenchmarkLauncher {
+
+	private static final String[] MAPS = {"maps/demo.tmx", "maps/start.tmx", "maps/entrance.tmx"};
+	private static final int QUERIES = 1000;
+	private static final long SEED = 42;
+	private static final int LONG_ROUTE = 32; //tiles
+
+	public static void main (String[] arg) {
+		LwjglApplicationConfiguration config = new LwjglApplicationConfiguration();
+		config.title = "Path finder benchmark";
+		config.width = 320;
+		config.height = 240;
+		new LwjglApplication(new ApplicationAdapter() {
+			@Override
+			public void create() {
+				for (String mapName : MAPS) {
+					GridTiledGraph graph = new GridTiledGraph();
+					graph.init(new TiledBasedMap(new TmxMapLoader().load(mapName)));
+					PathFinderBenchmark benchmark = new PathFinderBenchmark(graph, QUERIES, SEED);
+					benchmark.report(mapName, PathFinderType.values());
+					benchmark.reportMovement(mapName);
+					benchmark.reportSmoothing(mapName);
+					benchmark.reportLandmarks(mapName, LandmarkTable.DEFAULT_LANDMARKS);
+					benchmark.reportBidirectional(mapName, LONG_ROUTE);
+				}
+				Gdx.app.exit();
+			}
+		}, config);
+	}
+}
@@ -0,0 +1,28 @@
+package ru.grishagin.headless;
+
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+
+/*
+ * Runs the world without a display and reports how fast it is simulated. Run with "gradlew headless:run".
+ * Arguments, all optional: ticks, wanderers, path worker threads (0 means the time-sliced queue), random seed,
+ * system threads to measure scaling up to (0 means no such measurement).
+ */
+public class HeadlessLauncher {
+
+	private static final int DEFAULT_TICKS = 10000;
+	private static final int DEFAULT_WANDERERS = 100;
+	private static final long DEFAULT_SEED = 42;
+
+	public static void main (String[] arg) {
+		int ticks = arg.length > 0 ? Integer.parseInt(arg[0]) : DEFAULT_TICKS;
+		int wanderers = arg.length > 1 ? Integer.parseInt(arg[1]) : DEFAULT_WANDERERS;
+		int pathWorkers = arg.length > 2 ? Integer.parseInt(arg[2]) : 0;
+		long seed = arg.length > 3 ? Long.parseLong(arg[3]) : DEFAULT_SEED;
+		int systemThreads = arg.length > 4 ? Integer.parseInt(arg[4]) : 0;
+
+		HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+		config.renderInterval = -1; //everything is done in create()
+		new HeadlessApplication(new SimulationBenchmark(ticks, wanderers, pathWorkers, seed, systemThreads), config);
+	}
+}
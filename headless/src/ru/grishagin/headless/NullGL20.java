@@ -0,0 +1,37 @@
+package ru.grishagin.headless;
+
+import com.badlogic.gdx.graphics.GL20;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/*
+ * GL which does nothing. The headless backend of this libGDX version has no GL at all,
+ * but textures of maps and sprites are still created while the world is loaded.
+ * Calls return zero, false or an empty string, so textures get handle 0 and are never drawn.
+ */
+public class NullGL20 {
+
+	private NullGL20() {
+	}
+
+	public static GL20 create() {
+		return (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[]{GL20.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				Class<?> type = method.getReturnType();
+				if(type == int.class){
+					return 0;
+				} else if(type == boolean.class){
+					return false;
+				} else if(type == float.class){
+					return 0f;
+				} else if(type == String.class){
+					return "";
+				}
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,171 @@
+package ru.grishagin.headless;
+
+import com.badlogic.ashley.core.Engine;
+import com.badlogic.ashley.core.Entity;
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.TimeUtils;
+import ru.grishagin.components.NameComponent;
+import ru.grishagin.components.PositionComponent;
+import ru.grishagin.components.VelocityComponent;
+import ru.grishagin.model.GameModel;
+import ru.grishagin.systems.patfinding.PathFindingMetrics;
+import ru.grishagin.systems.patfinding.RollingHistogram;
+import ru.grishagin.systems.patfinding.WalkabilityGrid;
+import ru.grishagin.systems.patfinding.concurrent.PathWorkerPool;
+import ru.grishagin.systems.scheduler.SequentialSystemExecutor;
+import ru.grishagin.systems.scheduler.SystemExecutor;
+import ru.grishagin.systems.scheduler.concurrent.ForkJoinSystemExecutor;
+import ru.grishagin.utils.Logger;
+
+/*
+ * Boots GameModel with its map and systems, adds wanderers to give them work
+ * and runs fixed steps of the simulation clock one after another as fast as possible.
+ * Nothing is rendered, the clock is stepped directly instead of by frame time.
+ * A tenth of the ticks is run first to warm up the JIT and is not measured.
+ *
+ * With system threads the same world is then run again by 1, 2, 4... up to that many threads,
+ * each round with its own warm-up, to see how the parallel systems scale.
+ */
+public class SimulationBenchmark extends ApplicationAdapter {
+
+	private final int ticks;
+	private final int wanderers;
+	private final int pathWorkers;
+	private final long seed;
+	private final int systemThreads;
+
+	public SimulationBenchmark(int ticks, int wanderers, int pathWorkers, long seed, int systemThreads) {
+		this.ticks = ticks;
+		this.wanderers = wanderers;
+		this.pathWorkers = pathWorkers;
+		this.seed = seed;
+		this.systemThreads = systemThreads;
+	}
+
+	@Override
+	public void create() {
+		int exitCode = 0;
+		try {
+			run();
+		} catch (RuntimeException e){
+			Logger.warning("Simulation failed: " + e);
+			e.printStackTrace();
+			exitCode = 1;
+		}
+		Gdx.app.exit();
+		if(exitCode != 0){
+			System.exit(exitCode); //CI must see the failure
+		}
+	}
+
+	private void run() {
+		Gdx.gl = Gdx.gl20 = NullGL20.create();
+		Logger.setInfoEnabled(false);
+
+		long loadStart = TimeUtils.nanoTime();
+		GameModel model = GameModel.instance;
+		if(pathWorkers > 0){
+			model.movementSystem.setPathRequestProcessor(new PathWorkerPool(pathWorkers));
+		}
+		model.loadObjects();
+		WanderSystem wanderSystem = new WanderSystem(model.movementSystem, seed);
+		model.engine.addSystem(wanderSystem);
+		addWanderers(model);
+		long loadTime = TimeUtils.nanoTime() - loadStart;
+
+		step(model, ticks / 10);
+		long entityTicks = 0;
+		long changes = 0;
+		long coalesced = 0;
+		int maxChanges = 0;
+		long start = TimeUtils.nanoTime();
+		for (int i = 0; i < ticks; i++) {
+			entityTicks += model.engine.getEntities().size();
+			step(model, 1);
+			int tickChanges = model.scheduler.getAddedComponents() + model.scheduler.getRemovedComponents();
+			changes += tickChanges;
+			coalesced += model.scheduler.getCoalescedCommands();
+			maxChanges = Math.max(maxChanges, tickChanges);
+		}
+		long time = TimeUtils.nanoTime() - start;
+
+		Logger.setInfoEnabled(true);
+		double seconds = time / 1e9;
+		Logger.info("Loaded in " + loadTime / 1000000 + " ms: " + model.engine.getEntities().size() + " entities, "
+				+ wanderers + " of them wanderers, " + (pathWorkers > 0 ? pathWorkers + " path workers" : "path queue"));
+		Logger.info(ticks + " ticks of " + model.clock.getStep() * 1000 + " ms in " + Math.round(seconds * 1000) + " ms: "
+				+ Math.round(ticks / seconds) + " ticks/s, " + Math.round(entityTicks / seconds) + " entities/s, "
+				+ String.format("%.1f", model.clock.getTime() / seconds) + "x real time");
+		Logger.info("Structural changes per tick: " + String.format("%.1f", changes / (double)ticks) + ", max " + maxChanges
+				+ ", coalesced " + String.format("%.1f", coalesced / (double)ticks));
+		Logger.info("Trips started: " + wanderSystem.getTrips() + ", path requests pending: " + model.movementSystem.getPendingPathRequests());
+		reportPathFinding(model.movementSystem.getMetrics());
+		if(systemThreads > 0){
+			reportScaling(model);
+		}
+
+		model.movementSystem.getPathRequestProcessor().dispose();
+		model.scheduler.getExecutor().dispose();
+	}
+
+	private void reportScaling(GameModel model) {
+		double baseline = 0;
+		for (int threads = 1; threads <= systemThreads; threads = threads == systemThreads ? threads + 1 : Math.min(threads * 2, systemThreads)) {
+			//the calling thread works too
+			SystemExecutor executor = threads == 1 ? new SequentialSystemExecutor() : new ForkJoinSystemExecutor(threads - 1);
+			model.scheduler.setExecutor(executor);
+			Logger.setInfoEnabled(false);
+			step(model, ticks / 10);
+			long start = TimeUtils.nanoTime();
+			step(model, ticks);
+			double ticksPerSecond = ticks / ((TimeUtils.nanoTime() - start) / 1e9);
+			if(threads == 1){
+				baseline = ticksPerSecond;
+			}
+			Logger.setInfoEnabled(true);
+			Logger.info(threads + " system threads: " + Math.round(ticksPerSecond) + " ticks/s, "
+					+ String.format("%.2f", ticksPerSecond / baseline) + "x");
+		}
+	}
+
+	//one fixed step each: the clock gets exactly its step as frame time
+	private void step(GameModel model, int steps) {
+		for (int i = 0; i < steps; i++) {
+			model.update(model.clock.getStep());
+		}
+	}
+
+	private void addWanderers(GameModel model) {
+		Engine engine = model.engine;
+		WalkabilityGrid walkability = model.movementSystem.getGraph().getWalkability();
+		RandomXS128 random = new RandomXS128(seed);
+		for (int i = 0; i < wanderers; i++) {
+			int x, y;
+			do {
+				x = random.nextInt(walkability.getWidth());
+				y = random.nextInt(walkability.getHeight());
+			} while (!walkability.isWalkable(x, y));
+
+			Entity entity = new Entity();
+			entity.add(new NameComponent("Wanderer " + i));
+			entity.add(new PositionComponent(x, y));
+			entity.add(new VelocityComponent(5f));
+			entity.add(new WanderSystem.Wanderer());
+			engine.addEntity(entity);
+		}
+	}
+
+	private void reportPathFinding(PathFindingMetrics metrics) {
+		RollingHistogram.Snapshot snapshot = new RollingHistogram.Snapshot();
+		metrics.getSearchTime().getSnapshot(snapshot);
+		long searches = snapshot.count;
+		Logger.info("Path searches in the last " + metrics.getSearchTime().getWindowMillis() / 1000 + " s: " + searches
+				+ ", search time p50 " + snapshot.getPercentile(50) / 1000 + " us, p99 " + snapshot.getPercentile(99) / 1000 + " us");
+		metrics.getExpandedNodes().getSnapshot(snapshot);
+		Logger.info("Expanded nodes p50 " + snapshot.getPercentile(50) + ", p99 " + snapshot.getPercentile(99)
+				+ ", cache hits " + metrics.getCacheHits().getSnapshot(snapshot).count
+				+ ", failures " + metrics.getFailures().getSnapshot(snapshot).count);
+	}
+}
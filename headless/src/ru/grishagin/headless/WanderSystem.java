@@ -0,0 +1,54 @@
+package ru.grishagin.headless;
+
+import com.badlogic.ashley.core.Component;
+import com.badlogic.ashley.core.ComponentMapper;
+import com.badlogic.ashley.core.Entity;
+import com.badlogic.ashley.core.Family;
+import com.badlogic.ashley.systems.IteratingSystem;
+import com.badlogic.gdx.math.RandomXS128;
+import ru.grishagin.components.DestinationComponent;
+import ru.grishagin.components.PositionComponent;
+import ru.grishagin.systems.MovementSystem;
+import ru.grishagin.systems.patfinding.WalkabilityGrid;
+
+//load for the simulation: wanderers go to random reachable tiles one after another
+public class WanderSystem extends IteratingSystem {
+
+	private static final int ATTEMPTS = 16; //to find a reachable tile, the next try is on the next step
+
+	private ComponentMapper<PositionComponent> pm = ComponentMapper.getFor(PositionComponent.class);
+
+	private final MovementSystem movementSystem;
+	private final RandomXS128 random;
+	private int trips;
+
+	public WanderSystem(MovementSystem movementSystem, long seed) {
+		super(Family.all(Wanderer.class, PositionComponent.class).exclude(DestinationComponent.class).get());
+		this.movementSystem = movementSystem;
+		random = new RandomXS128(seed);
+	}
+
+	//destinations given so far
+	public int getTrips() {
+		return trips;
+	}
+
+	@Override
+	protected void processEntity(Entity entity, float deltaTime) {
+		WalkabilityGrid walkability = movementSystem.getGraph().getWalkability();
+		PositionComponent position = pm.get(entity);
+		for (int i = 0; i < ATTEMPTS; i++) {
+			int x = random.nextInt(walkability.getWidth());
+			int y = random.nextInt(walkability.getHeight());
+			if(walkability.isWalkable(x, y) && (x != (int)position.x || y != (int)position.y)
+					&& movementSystem.isReachable(entity, x, y, 0)){
+				entity.add(new DestinationComponent(x, y));
+				trips++;
+				return;
+			}
+		}
+	}
+
+	public static class Wanderer implements Component {
+	}
+}